@@ -25,11 +25,87 @@
 
 package java.net_modified;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.Permission;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 import java.net.*;
 
 /**
@@ -44,6 +120,48 @@ import java.net.*;
  * affect shared persistent connections. Calling {@link #disconnect()} may close 
  * the underlying socket if no other connections are using it.
  *
+ * <h3>Connection Reuse</h3>
+ * <p>Concrete implementations are expected to keep idle HTTP/1.1 keep-alive
+ * connections in a cache keyed by the destination host and port (and proxy, if any),
+ * so that a later {@code HttpURLConnection} to the same destination can skip the
+ * TCP (and TLS) handshake. A connection is leased to exactly one instance at a time
+ * and is returned to the cache only when the exchange has completed cleanly:</p>
+ * <ul>
+ *   <li>The response body has been read to the end and its {@code InputStream}
+ *       (or the {@linkplain #getErrorStream() error stream}) has been closed.</li>
+ *   <li>The server did not send {@code Connection: close}, and the body length was
+ *       delimited (by {@code Content-Length} or chunked transfer encoding).</li>
+ * </ul>
+ * <p>Idle connections are evicted after a keep-alive timeout, and the number of
+ * connections kept per destination is bounded. An instance that is abandoned before
+ * its body is consumed, or on which {@link #disconnect()} is called, never returns
+ * its connection to the cache. {@link ConnectionPool} implements this cache.</p>
+ *
+ * <p>Implementations may additionally offer HTTP/1.1 pipelining, which callers opt 
+ * into with {@link #setPipelining(boolean)}, sending several requests on one 
+ * keep-alive connection without waiting for each response. Only requests whose {@linkplain #getRequestMethod() request method} is safe 
+ * ({@code GET}, {@code HEAD}, {@code OPTIONS} or {@code TRACE}) may be pipelined. 
+ * Responses are matched to requests strictly in the order the requests were written. 
+ * If the server closes the connection part way through a pipeline, the requests that 
+ * have no response yet are re-sent, unpipelined, on another connection.</p>
+ *
+ * <h3>Response Caching</h3>
+ * <p>When {@link #getUseCaches()} is {@code true} and a {@link ResponseCache} is 
+ * installed, implementations look up {@code GET} requests in the cache before 
+ * connecting. A cache hit that is still fresh, as computed by 
+ * {@link #getFreshnessLifetime()}, is served without touching a socket: 
+ * {@link #getResponseCode()}, the indexed header accessors and the body stream behave 
+ * exactly as for a response read from the network. A stale hit is revalidated with a 
+ * conditional request (see {@link #setConditionalHeaders(String, long)}), and a 
+ * {@link #HTTP_NOT_MODIFIED} answer is served from the stored body.</p>
+ * <p>Caches may be layered, for example a small in-memory tier for hot, small 
+ * responses in front of a larger on-disk store. An in-memory tier should bound its 
+ * size by bytes rather than by entry count, and should use a frequency-aware 
+ * admission policy such as W-TinyLFU, so that a one-off scan over many URLs does not 
+ * evict the entries that are requested repeatedly. {@link MemoryResponseCache} is 
+ * such a tier, and {@link DiskResponseCache} is an on-disk store that also keeps 
+ * stale responses for revalidation.</p>
+ *
  * <p>The behavior of HTTP connections can be controlled via system properties, 
  * such as proxy settings and miscellaneous HTTP settings.
  * 
@@ -75,6 +193,15 @@ import java.net.*;
  * <p><b>Note:</b> This class is not thread-safe. Each instance should be used by 
  * one thread at a time.</p>
  * 
+ * <p>Instances may be used from virtual threads. Concrete implementations should not 
+ * hold an object monitor ({@code synchronized}) while blocked in network I/O, that is 
+ * while connecting, in {@link #getResponseCode()}, while reading a response body, or in 
+ * {@link #disconnect()}; shared state such as a connection cache should be guarded with 
+ * {@link java.util.concurrent.locks.ReentrantLock} or similar instead, so that a blocked 
+ * exchange releases its carrier thread. Bulk callers can then run one exchange per 
+ * virtual thread, for example with 
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}.</p>
+ * 
  * @see     java.net.HttpURLConnection#disconnect()
  * @since   1.1
  */
@@ -115,6 +242,19 @@ public abstract class HttpURLConnection extends URLConnection {
      */
     protected int chunkLength = -1;
 
+    /**
+     * The smallest chunk length, including the chunk size header, when chunked 
+     * streaming mode adapts the chunk length between this value and 
+     * {@link #chunkLength}.
+     *
+     * <p>A value of {@code -1} means that the chunk length is fixed at 
+     * {@code chunkLength}.
+     *
+     * @see #setChunkedStreamingMode(int, int)
+     * @see ChunkSizer
+     */
+    protected int minChunkLength = -1;
+
     /**
      * The fixed content-length in bytes for output when using fixed-length streaming mode.
      * 
@@ -178,6 +318,13 @@ public abstract class HttpURLConnection extends URLConnection {
     *           {@code Authenticator} instance, and authentication information,
     *           if cached, may only be reused for an {@code HttpURLConnection}
     *           sharing that same {@code Authenticator}.
+    *           <br>
+    *           Implementations cache the credentials that answered a challenge
+    *           per authenticator, host, realm and scheme (see
+    *           {@link #cacheCredentials cacheCredentials}), send them
+    *           preemptively on later requests to the same host for paths in
+    *           or below the directory that was challenged, and discard
+    *           them when a request carrying them is challenged again.
     *
     * @param auth The {@code Authenticator} that should be used by this
     *           {@code HttpURLConnection}.
@@ -193,11 +340,199 @@ public abstract class HttpURLConnection extends URLConnection {
                     + " is not supported by " + this.getClass());
     }
 
+    /*
+     * Cached Authorization and Proxy-Authorization values, per authenticator. Each
+     * inner map holds credentialKey() -> header value, and spaceKey() -> the
+     * credentialKey() last cached for that protection space, for preemptive use.
+     * Credentials of the default authenticator are kept apart, so that the common case
+     * needs no lookup by authenticator; those of other authenticators are held by weak
+     * keys, expunged as their authenticators are collected.
+     */
+    private static final ConcurrentHashMap<String, String> defaultCredentials =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<AuthenticatorKey, ConcurrentHashMap<String, String>>
+            credentialCache = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Authenticator> collectedAuthenticators =
+            new ReferenceQueue<>();
+
+    /* A weak, identity-based key for an authenticator in credentialCache */
+    private static final class AuthenticatorKey extends WeakReference<Authenticator> {
+        private final int hash;
+
+        AuthenticatorKey(Authenticator auth, ReferenceQueue<Authenticator> queue) {
+            super(auth, queue);
+            hash = System.identityHashCode(auth);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AuthenticatorKey)) {
+                return false;
+            }
+            Authenticator auth = get();
+            return auth != null && auth == ((AuthenticatorKey) obj).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Caches the credentials that answered an {@link #HTTP_UNAUTHORIZED} or 
+     * {@link #HTTP_PROXY_AUTH} challenge, so that later requests in the same protection 
+     * space can send them preemptively instead of waiting for another challenge.
+     *
+     * <p>Credentials are cached per authenticator, host, realm and authentication 
+     * scheme, and are only ever returned for connections that use the same 
+     * {@code Authenticator} instance, or that both use the default authenticator. 
+     * For preemptive use, server credentials are associated with the directory of the 
+     * challenged path, and are sent with requests for that directory and the paths 
+     * below it, as RFC 7617 section 2.2 allows; proxy credentials apply to every 
+     * request through the proxy. Cached credentials are released when their 
+     * authenticator becomes unreachable.</p>
+     *
+     * @param auth the authenticator that supplied the credentials, or {@code null} for 
+     *        the default authenticator.
+     * @param host the host and port that issued the challenge, as {@code host:port}.
+     * @param path the path of the request that was challenged, such as 
+     *        {@code /docs/index.html}; ignored for a proxy.
+     * @param proxy {@code true} if the challenge came from a proxy (407), {@code false} 
+     *        if it came from the server (401).
+     * @param scheme the authentication scheme of the challenge, such as {@code Basic}; 
+     *        compared ignoring case.
+     * @param realm the realm of the challenge.
+     * @param authorization the value of the {@code Authorization} or 
+     *        {@code Proxy-Authorization} request header that answered the challenge.
+     * @throws NullPointerException if any argument other than {@code auth} and 
+     *         {@code path} is {@code null}.
+     *
+     * @see #getCachedCredentials(Authenticator, String, String, boolean)
+     * @see #invalidateCredentials(Authenticator, String, boolean, String, String)
+     */
+    protected static void cacheCredentials(Authenticator auth, String host, String path,
+                                           boolean proxy, String scheme, String realm,
+                                           String authorization) {
+        Objects.requireNonNull(authorization, "authorization");
+        String key = credentialKey(host, proxy, scheme, realm);
+        ConcurrentHashMap<String, String> credentials;
+        if (auth == null) {
+            credentials = defaultCredentials;
+        } else {
+            Reference<? extends Authenticator> collected;
+            while ((collected = collectedAuthenticators.poll()) != null) {
+                credentialCache.remove(collected);
+            }
+            credentials = credentialCache.computeIfAbsent(
+                    new AuthenticatorKey(auth, collectedAuthenticators),
+                    a -> new ConcurrentHashMap<>());
+        }
+        credentials.put(key, authorization);
+        credentials.put(spaceKey(host, proxy, proxy ? "/" : directory(path)), key);
+    }
+
+    /**
+     * Returns the credentials to send preemptively with a request, as the value of the 
+     * {@code Authorization} header (or {@code Proxy-Authorization} header, for a 
+     * proxy). These are the credentials most recently cached with 
+     * {@link #cacheCredentials(Authenticator, String, String, boolean, String, String, String)} 
+     * for the deepest directory that contains {@code path}, if they have not been 
+     * invalidated since.
+     *
+     * @param auth the authenticator used by the connection, or {@code null} for the 
+     *        default authenticator.
+     * @param host the host and port being connected to, as {@code host:port}.
+     * @param path the path of the request; ignored for a proxy.
+     * @param proxy {@code true} for proxy credentials, {@code false} for server 
+     *        credentials.
+     * @return the header value to send, or {@code null} if none is cached.
+     * @throws NullPointerException if {@code host} is {@code null}.
+     */
+    protected static String getCachedCredentials(Authenticator auth, String host, String path,
+                                                 boolean proxy) {
+        ConcurrentHashMap<String, String> credentials = auth == null
+                ? defaultCredentials
+                : credentialCache.get(new AuthenticatorKey(auth, null));
+        if (credentials == null || credentials.isEmpty()) {
+            return null;
+        }
+        String dir = proxy ? "/" : directory(path);
+        for (;;) {
+            String space = spaceKey(host, proxy, dir);
+            String key = credentials.get(space);
+            if (key != null) {
+                String authorization = credentials.get(key);
+                if (authorization != null) {
+                    return authorization;
+                }
+                credentials.remove(space, key);    // invalidated since
+            }
+            if (dir.length() == 1) {
+                return null;
+            }
+            dir = dir.substring(0, dir.lastIndexOf('/', dir.length() - 2) + 1);
+        }
+    }
+
+    /**
+     * Discards cached credentials that the server or proxy has rejected. 
+     * Implementations should call this method when a request that carried cached 
+     * credentials is answered with another {@link #HTTP_UNAUTHORIZED} or 
+     * {@link #HTTP_PROXY_AUTH} challenge for the same realm and scheme, before asking 
+     * the authenticator again. The credentials are no longer sent preemptively for any 
+     * path.
+     *
+     * @param auth the authenticator used by the connection, or {@code null} for the 
+     *        default authenticator.
+     * @param host the host and port that issued the challenge, as {@code host:port}.
+     * @param proxy {@code true} if the challenge came from a proxy, {@code false} if it 
+     *        came from the server.
+     * @param scheme the authentication scheme of the challenge; compared ignoring case.
+     * @param realm the realm of the challenge.
+     * @throws NullPointerException if any argument other than {@code auth} is 
+     *         {@code null}.
+     */
+    protected static void invalidateCredentials(Authenticator auth, String host, boolean proxy,
+                                                String scheme, String realm) {
+        String key = credentialKey(host, proxy, scheme, realm);
+        ConcurrentHashMap<String, String> credentials = auth == null
+                ? defaultCredentials
+                : credentialCache.get(new AuthenticatorKey(auth, null));
+        if (credentials != null) {
+            credentials.remove(key);
+        }
+    }
+
+    private static String credentialKey(String host, boolean proxy, String scheme, String realm) {
+        return (proxy ? "proxy " : "server ") + Objects.requireNonNull(host, "host") + ' '
+                + scheme.toLowerCase(Locale.ROOT) + ' ' + Objects.requireNonNull(realm, "realm");
+    }
+
+    /* the preemptive entry of a protection space; it never equals a credentialKey() */
+    private static String spaceKey(String host, boolean proxy, String directory) {
+        return (proxy ? "proxy " : "server ") + Objects.requireNonNull(host, "host") + directory;
+    }
+
+    /* the path up to and including its last '/', which is the directory RFC 7617 protects */
+    private static String directory(String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return "/";
+        }
+        return path.substring(0, path.lastIndexOf('/') + 1);
+    }
+
     /**
      * Returns the key of the HTTP header field at the specified index {@code n}. 
      * The 0th header field may be treated as the HTTP status line, in which case 
      * this method will return {@code null} for {@code n = 0}.
      *
+     * <p><b>Default Behavior:</b> Returns the name of the {@code n}th field of 
+     * {@link #responseHeaders}, or {@code null} if that field is not set.</p>
+     *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
      * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
@@ -220,7 +555,309 @@ public abstract class HttpURLConnection extends URLConnection {
      * @see java.net.HttpURLConnection#getHeaderField(int)
      */
     public String getHeaderFieldKey (int n) {
-        return null;
+        HeaderBlock headers = responseHeaders;
+        return headers == null ? null : headers.getKey(n);
+    }
+
+    /* Well-known response header names, handed out as shared instances by headerName() */
+    private static final String[] COMMON_HEADERS = {
+        "Accept-Ranges", "Access-Control-Allow-Origin", "Age", "Allow", "Alt-Svc",
+        "Cache-Control", "Connection", "Content-Disposition", "Content-Encoding",
+        "Content-Language", "Content-Length", "Content-Location", "Content-Range",
+        "Content-Security-Policy", "Content-Type", "Date", "ETag", "Expires",
+        "Keep-Alive", "Last-Modified", "Link", "Location", "Pragma",
+        "Proxy-Authenticate", "Proxy-Connection", "Referrer-Policy", "Retry-After",
+        "Server", "Set-Cookie", "Strict-Transport-Security", "Trailer",
+        "Transfer-Encoding", "Upgrade", "Vary", "Via", "Warning", "WWW-Authenticate",
+        "X-Content-Type-Options", "X-Frame-Options", "X-XSS-Protection"
+    };
+
+    /* open-addressed table of COMMON_HEADERS, indexed by headerSlot() */
+    private static final String[] HEADER_TABLE = new String[128];
+
+    static {
+        for (String h : COMMON_HEADERS) {
+            int i = headerSlot(h.length(), h.charAt(0), h.charAt(h.length() - 1));
+            while (HEADER_TABLE[i] != null) {
+                i = (i + 1) & (HEADER_TABLE.length - 1);
+            }
+            HEADER_TABLE[i] = h;
+        }
+    }
+
+    private static int headerSlot(int len, int first, int last) {
+        return (len * 31 + (first | 0x20) * 7 + (last | 0x20)) & (HEADER_TABLE.length - 1);
+    }
+
+    /**
+     * Returns the header field name stored in {@code len} bytes of {@code buf} 
+     * starting at {@code off}, as parsed from a response header line.
+     *
+     * <p>If the bytes match one of the commonly sent header names (for example 
+     * {@code Content-Length}, {@code Content-Type}, {@code Date} or {@code ETag}) 
+     * ignoring case, the canonical spelling of that name is returned as a shared 
+     * {@code String} instance, and nothing is allocated. Other names are decoded as 
+     * ISO-8859-1 into a new {@code String}. Implementations should use this method when 
+     * parsing the names later returned by {@link #getHeaderFieldKey(int)}, so that the 
+     * same few dozen names are not duplicated for every response.</p>
+     *
+     * @param buf the buffer holding the header name.
+     * @param off the offset of the first byte of the name.
+     * @param len the length of the name in bytes.
+     * @return the header field name.
+     * @throws IndexOutOfBoundsException if {@code off} and {@code len} do not describe 
+     *         a region of {@code buf}.
+     */
+    protected static String headerName(byte[] buf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, buf.length);
+        if (len > 0) {
+            int i = headerSlot(len, buf[off] & 0xff, buf[off + len - 1] & 0xff);
+            String h;
+            while ((h = HEADER_TABLE[i]) != null) {
+                if (h.length() == len && regionMatchesIgnoreCase(h, buf, off)) {
+                    return h;
+                }
+                i = (i + 1) & (HEADER_TABLE.length - 1);
+            }
+        }
+        return new String(buf, off, len, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean regionMatchesIgnoreCase(String s, byte[] buf, int off) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            char b = (char) (buf[off + i] & 0xff);
+            if (b != c && Character.toLowerCase(b) != Character.toLowerCase(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The response header block, if the implementation keeps it as a 
+     * {@link HeaderBlock}. When it is set, {@link #getHeaderFieldKey(int)} and 
+     * {@link #getHeaderField(int)} read the fields from it; when it is {@code null}, 
+     * they return {@code null}.
+     *
+     * @see HeaderBlock
+     */
+    protected HeaderBlock responseHeaders;
+
+    /**
+     * A response header block kept as the raw bytes received from the server, for 
+     * implementations of {@link #getHeaderFieldKey(int)} and {@link #getHeaderField(int)}.
+     *
+     * <p>The block is parsed once, when it is created, into an array of offsets: four 
+     * per field, giving the start and end of its name and of its value with the 
+     * surrounding whitespace removed. No {@code String} is created at that point. A 
+     * name or value is decoded the first time it is requested and then kept, so 
+     * positional access is constant-time, iterating over all fields costs time 
+     * proportional to the size of the block, and fields that are never read never 
+     * allocate. Names are obtained through {@link #headerName(byte[], int, int)}, so 
+     * common names are shared instances.</p>
+     *
+     * <p>Field 0 is the status line, which has a {@code null} name. Lines may end with 
+     * CRLF or a bare LF, and parsing stops at the first empty line. A line starting with 
+     * a space or tab continues the previous field's value (obsolete line folding); such 
+     * a value is returned with each line break replaced by a single space.</p>
+     *
+     * <p>The block refers to the byte array it was created from instead of copying it, 
+     * so the caller must not modify that region afterwards. A {@code HeaderBlock} is 
+     * not thread-safe.</p>
+     *
+     * @see #responseHeaders
+     */
+    protected static final class HeaderBlock {
+        private final byte[] buf;
+        /* for field n: name start and end at 4n and 4n+1, value start and end at 4n+2 and 4n+3 */
+        private final int[] offsets;
+        private final int count;
+        /* names and values decoded so far, allocated on first access */
+        private String[] keys;
+        private String[] values;
+
+        /**
+         * Parses the header block stored in {@code len} bytes of {@code buf} starting 
+         * at {@code off}, beginning with the status line.
+         *
+         * @param buf the buffer holding the header block.
+         * @param off the offset of the first byte of the status line.
+         * @param len the length of the block in bytes; bytes after the first empty 
+         *            line are ignored.
+         * @throws IOException if a header line has no name followed by a colon, or the 
+         *         first header line is a continuation line.
+         * @throws IndexOutOfBoundsException if {@code off} and {@code len} do not 
+         *         describe a region of {@code buf}.
+         */
+        public HeaderBlock(byte[] buf, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, buf.length);
+            this.buf = buf;
+            int end = off + len;
+            int lines = 1;
+            for (int i = off; i < end; i++) {
+                if (buf[i] == '\n') {
+                    lines++;
+                }
+            }
+            int[] o = new int[4 * lines];
+            int n = 0;
+            int pos = off;
+            while (pos < end) {
+                int eol = pos;
+                while (eol < end && buf[eol] != '\n') {
+                    eol++;
+                }
+                int lineEnd = eol > pos && buf[eol - 1] == '\r' ? eol - 1 : eol;
+                if (lineEnd == pos) {
+                    break;
+                }
+                if (n == 0) {
+                    o[0] = o[1] = -1;
+                    o[2] = pos;
+                    o[3] = lineEnd;
+                    n++;
+                } else if (buf[pos] == ' ' || buf[pos] == '\t') {
+                    if (n == 1) {
+                        throw new IOException("Invalid header continuation line");
+                    }
+                    if (trimStart(pos, lineEnd) < lineEnd) {
+                        o[4 * (n - 1) + 3] = trimEnd(pos, lineEnd);
+                    }
+                } else {
+                    int colon = pos;
+                    while (colon < lineEnd && buf[colon] != ':') {
+                        colon++;
+                    }
+                    if (colon == pos || colon == lineEnd) {
+                        throw new IOException("Invalid header field");
+                    }
+                    int v = trimStart(colon + 1, lineEnd);
+                    o[4 * n] = pos;
+                    o[4 * n + 1] = colon;
+                    o[4 * n + 2] = v;
+                    o[4 * n + 3] = trimEnd(v, lineEnd);
+                    n++;
+                }
+                pos = eol + 1;
+            }
+            this.offsets = o;
+            this.count = n;
+        }
+
+        /**
+         * Returns the number of fields in the block, including the status line.
+         *
+         * @return the number of fields.
+         */
+        public int fieldCount() {
+            return count;
+        }
+
+        /**
+         * Returns the name of the {@code n}th field.
+         *
+         * @param n the index of the field, where {@code n >= 0}.
+         * @return the name of the field, or {@code null} if {@code n} is 0 (the status 
+         *         line) or there is no such field.
+         */
+        public String getKey(int n) {
+            if (n <= 0 || n >= count) {
+                return null;
+            }
+            if (keys == null) {
+                keys = new String[count];
+            }
+            String k = keys[n];
+            if (k == null) {
+                k = keys[n] = headerName(buf, offsets[4 * n], offsets[4 * n + 1] - offsets[4 * n]);
+            }
+            return k;
+        }
+
+        /**
+         * Returns the value of the {@code n}th field.
+         *
+         * @param n the index of the field, where {@code n >= 0}.
+         * @return the value of the field, the status line if {@code n} is 0, or 
+         *         {@code null} if there is no such field.
+         */
+        public String getValue(int n) {
+            if (n < 0 || n >= count) {
+                return null;
+            }
+            if (values == null) {
+                values = new String[count];
+            }
+            String v = values[n];
+            if (v == null) {
+                v = values[n] = decodeValue(offsets[4 * n + 2], offsets[4 * n + 3]);
+            }
+            return v;
+        }
+
+        /**
+         * Returns the value of the last field with the given name, compared ignoring 
+         * case. Names are compared against the raw bytes, so no other field is decoded.
+         *
+         * @param name the field name.
+         * @return the value of the last field named {@code name}, or {@code null} if 
+         *         there is none.
+         */
+        public String findValue(String name) {
+            for (int n = count - 1; n > 0; n--) {
+                int start = offsets[4 * n];
+                if (offsets[4 * n + 1] - start == name.length()
+                        && regionMatchesIgnoreCase(name, buf, start)) {
+                    return getValue(n);
+                }
+            }
+            return null;
+        }
+
+        /* ISO-8859-1 text of a value, with each folded line break collapsed to one space */
+        private String decodeValue(int start, int end) {
+            int i = start;
+            while (i < end && buf[i] != '\n') {
+                i++;
+            }
+            if (i == end) {
+                return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+            }
+            StringBuilder sb = new StringBuilder(end - start);
+            for (i = start; i < end; i++) {
+                byte b = buf[i];
+                if (b == '\r' || b == '\n') {
+                    int k = sb.length();
+                    while (k > 0 && (sb.charAt(k - 1) == ' ' || sb.charAt(k - 1) == '\t')) {
+                        k--;
+                    }
+                    sb.setLength(k);
+                    sb.append(' ');
+                    while (i + 1 < end && (buf[i + 1] == '\r' || buf[i + 1] == '\n'
+                            || buf[i + 1] == ' ' || buf[i + 1] == '\t')) {
+                        i++;
+                    }
+                } else {
+                    sb.append((char) (b & 0xff));
+                }
+            }
+            return sb.toString();
+        }
+
+        private int trimStart(int i, int end) {
+            while (i < end && (buf[i] == ' ' || buf[i] == '\t')) {
+                i++;
+            }
+            return i;
+        }
+
+        private int trimEnd(int start, int end) {
+            while (end > start && (buf[end - 1] == ' ' || buf[end - 1] == '\t')) {
+                end--;
+            }
+            return end;
+        }
     }
 
     /**
@@ -292,6 +929,115 @@ public abstract class HttpURLConnection extends URLConnection {
         
     }
 
+    /**
+     * Uses a region of a file as the HTTP request body, sent in fixed-length streaming 
+     * mode. This is equivalent to calling {@link #setFixedLengthStreamingMode(long)} 
+     * with {@code count} and then writing those bytes of the file to 
+     * {@code getOutputStream()}, except that the application does not write the body 
+     * itself: the implementation sends it when the request is written.
+     *
+     * <p>Because the source is a file of known length, an implementation can move the 
+     * bytes to the socket with {@link FileChannel#transferTo(long, long, 
+     * java.nio.channels.WritableByteChannel)}, which the operating system may perform 
+     * without copying the data into user space, instead of pumping it through a heap 
+     * buffer. The file channel is not closed by the connection, and its position is 
+     * not changed.</p>
+     *
+     * <p>This method must be called before the URLConnection is connected. It replaces 
+     * any content length set earlier with {@code setFixedLengthStreamingMode}, and 
+     * {@code getOutputStream()} must not be used for the same request. As with other 
+     * streaming modes, authentication and redirection that require the body to be 
+     * re-sent cannot be handled automatically.</p>
+     *
+     * <p><b>Default Behavior:</b> This method checks its arguments and the state of the 
+     * connection, calls {@code setFixedLengthStreamingMode(count)}, records 
+     * {@code count} in {@link #fixedContentLengthLong}, and remembers the file region. 
+     * Implementations send it with {@link #transferRequestBody(WritableByteChannel)} 
+     * when the request is written.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * try (FileChannel file = FileChannel.open(path, READ)) {
+     *     httpConn.setRequestMethod("PUT");
+     *     httpConn.setDoOutput(true);
+     *     httpConn.setFixedLengthStreamingBody(file, 0, file.size());
+     *     int responseCode = httpConn.getResponseCode();
+     * }
+     * }</pre>
+     *
+     * @param src the file to read the request body from; it must be open for reading.
+     * @param position the position in {@code src} of the first byte of the body, 
+     *                 {@code >= 0}.
+     * @param count the number of bytes to send, which becomes the request's 
+     *              {@code Content-Length}, {@code >= 0}.
+     * @throws IllegalStateException if the URLConnection is already connected or if 
+     *         chunked streaming mode is enabled.
+     * @throws IllegalArgumentException if {@code position} or {@code count} is negative.
+     * @throws NullPointerException if {@code src} is {@code null}.
+     * @see #setFixedLengthStreamingMode(long)
+     * @see #transferRequestBody(WritableByteChannel)
+     */
+    public void setFixedLengthStreamingBody(FileChannel src, long position, long count) {
+        Objects.requireNonNull(src, "src");
+        if (connected) {
+            throw new IllegalStateException("Already connected");
+        }
+        if (chunkLength != -1) {
+            throw new IllegalStateException("Chunked encoding streaming mode set");
+        }
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid file region: position "
+                    + position + ", count " + count);
+        }
+        setFixedLengthStreamingMode(count);
+        fixedContentLengthLong = count;
+        bodySource = src;
+        bodyPosition = position;
+        bodyCount = count;
+    }
+
+    /* the file region set by setFixedLengthStreamingBody(), if any */
+    private FileChannel bodySource;
+    private long bodyPosition;
+    private long bodyCount;
+
+    /**
+     * Sends the request body set with 
+     * {@link #setFixedLengthStreamingBody(FileChannel, long, long)} to the given 
+     * channel. Implementations call this method when they write the request, passing 
+     * the socket channel or the stream wrapping it.
+     *
+     * <p>The bytes are moved with {@link FileChannel#transferTo(long, long, 
+     * WritableByteChannel)}, which the operating system may perform without copying 
+     * them through the Java heap when {@code target} is a socket. The position of the 
+     * file channel is not changed, and neither channel is closed.</p>
+     *
+     * @param target the channel to write the body to, in blocking mode.
+     * @return the number of bytes sent, which is the content length.
+     * @throws EOFException if the file ends before the whole region has been sent.
+     * @throws IOException if an I/O error occurs while reading the file or writing 
+     *         {@code target}.
+     * @throws IllegalStateException if no request body has been set from a file.
+     * @throws NullPointerException if {@code target} is {@code null}.
+     */
+    protected long transferRequestBody(WritableByteChannel target) throws IOException {
+        Objects.requireNonNull(target, "target");
+        if (bodySource == null) {
+            throw new IllegalStateException("No request body set from a file");
+        }
+        long sent = 0;
+        while (sent < bodyCount) {
+            long n = bodySource.transferTo(bodyPosition + sent, bodyCount - sent, target);
+            if (n == 0 && bodyPosition + sent >= bodySource.size()) {
+                throw new EOFException("File ended after " + sent + " of "
+                        + bodyCount + " bytes of the request body");
+            }
+            sent += n;
+        }
+        return sent;
+    }
+
     /* Default chunk size (including chunk header) if not specified;
     * we want to keep this in sync with the one defined in
     * sun.net.www.http.ChunkedOutputStream
@@ -350,438 +1096,4645 @@ public abstract class HttpURLConnection extends URLConnection {
     }
 
     /**
-     * Returns the value of the HTTP header field at the specified index {@code n}. 
-     * This method allows access to HTTP header values returned by the server in 
-     * the response. Header fields are indexed starting from 0, where some 
-     * implementations may treat the 0th field as the status line (e.g., "HTTP/1.1 200 OK").
+     * Enables streaming of an HTTP request body using chunked transfer encoding, with 
+     * a chunk size that the implementation adapts within the given bounds. This is a 
+     * variant of {@link #setChunkedStreamingMode(int)} for long-running uploads over 
+     * fast links, where a single fixed chunk size either produces many small writes 
+     * and chunk headers or holds back data on slower links.
      *
-     * <p>This method can be used in conjunction with {@link #getHeaderFieldKey(int)} 
-     * to iterate over all the headers in the HTTP response. For example, you can 
-     * retrieve both the key and value of each header by using the two methods 
-     * together in a loop.
+     * <p>An adaptive implementation starts at {@code minChunklen}, grows the chunk size 
+     * while the application writes faster than chunks of the current size are sent 
+     * and the socket send buffer drains quickly, and shrinks it again when writes slow 
+     * down or the send buffer stays full. The chunk size never leaves the given bounds. 
+     * Both bounds include the chunk size header, as for 
+     * {@link #setChunkedStreamingMode(int)}.</p>
      *
-     * <p>If the header at the specified index does not exist, this method returns 
-     * {@code null}. It also returns {@code null} if the index is out of bounds.
+     * <p>The same restrictions as for {@link #setChunkedStreamingMode(int)} apply: the 
+     * mode must be enabled before connecting, it cannot be combined with fixed-length 
+     * streaming mode, and authentication and redirection are not handled 
+     * automatically.</p>
      *
-     * <p><b>Usage Example:</b></p>
+     * <p><b>Default Behavior:</b> This method checks its arguments and the state of the 
+     * connection, calls {@code setChunkedStreamingMode(maxChunklen)}, and records the 
+     * bounds in {@link #minChunkLength} and {@link #chunkLength}. Implementations pass 
+     * them to a {@link ChunkSizer}, which picks the chunk size from the observed write 
+     * and drain times, and write the body with a {@link ChunkWriter} that uses it.</p>
+     *
+     * <p><b>Example Usage:</b></p>
      * <pre>{@code
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * httpConn.setRequestMethod("GET");
-     * httpConn.connect();
-     * 
-     * // Iterate over all headers
-     * for (int i = 0;; i++) {
-     *     String headerKey = httpConn.getHeaderFieldKey(i);
-     *     String headerValue = httpConn.getHeaderField(i);
-     *     if (headerKey == null && headerValue == null) {
-     *         break; // No more headers
-     *     }
-     *     System.out.println(headerKey + ": " + headerValue);
-     * }
+     * HttpURLConnection httpConn = (HttpURLConnection) new URL("https://example.com").openConnection();
+     * httpConn.setChunkedStreamingMode(4096, 256 * 1024); // Between 4 KB and 256 KB
+     * httpConn.setRequestMethod("POST");
+     * httpConn.setDoOutput(true);
      * }</pre>
      *
-     * @param n the index of the header field, where {@code n >= 0}.
-     * @return the value of the nth header field, or {@code null} if the header 
-     *         does not exist or if the index is out of bounds.
+     * @param   minChunklen the smallest chunk size to use, in bytes, including the chunk 
+     *          size header. Must be greater than 5 bytes.
+     * @param   maxChunklen the largest chunk size to use, in bytes, including the chunk 
+     *          size header. Must not be less than {@code minChunklen}.
+     * @throws  IllegalStateException if the connection has already been established or if fixed-length streaming mode is already set.
+     * @throws  IllegalArgumentException if {@code minChunklen} is 5 or less, or 
+     *          {@code maxChunklen} is less than {@code minChunklen}.
      *
-     * @see java.net.HttpURLConnection#getHeaderFieldKey(int)
-     * @see java.net.URLConnection#getHeaderField(int)
+     * @see     #setChunkedStreamingMode(int)
+     * @see     ChunkSizer
      */
-    @Override
-    public String getHeaderField(int n) {
-        return null;
+    public void setChunkedStreamingMode(int minChunklen, int maxChunklen) {
+        if (connected) {
+            throw new IllegalStateException("Already connected");
+        }
+        if (fixedContentLength != -1 || fixedContentLengthLong != -1) {
+            throw new IllegalStateException("Fixed length streaming mode set");
+        }
+        if (minChunklen <= 5 || maxChunklen < minChunklen) {
+            throw new IllegalArgumentException("Invalid chunk length bounds: "
+                    + minChunklen + ", " + maxChunklen);
+        }
+        setChunkedStreamingMode(maxChunklen);
+        chunkLength = maxChunklen;
+        minChunkLength = minChunklen;
     }
 
     /**
-     * An {@code int} representing the three digit HTTP Status-Code.
-    * <ul>
-    * <li> 1xx: Informational
-    * <li> 2xx: Success
-    * <li> 3xx: Redirection
-    * <li> 4xx: Client Error
-    * <li> 5xx: Server Error
-    * </ul>
-    */
-    protected int responseCode = -1;
+     * Chooses the chunk size for a request body sent in adaptive 
+     * {@linkplain #setChunkedStreamingMode(int, int) chunked streaming mode}.
+     *
+     * <p>After each chunk, the writer {@linkplain #record(int, long, long) records} how 
+     * long the application took to supply the chunk's data and how long the write was 
+     * blocked on the socket. When both are short, the application is producing data 
+     * faster than small chunks can carry it and the send buffer has room, so the chunk 
+     * size is doubled, saving chunk headers and system calls. When either is long, 
+     * large chunks would hold data back from the server or block on a full send buffer, 
+     * so the chunk size is halved. The size always stays within the bounds.</p>
+     *
+     * <p>Each time the size changes, the new size is passed to the listener given at 
+     * construction, for example to feed a metrics histogram.</p>
+     *
+     * <p>A {@code ChunkSizer} is not thread-safe.</p>
+     *
+     * @see ChunkWriter#ChunkWriter(GatheringByteChannel, ChunkSizer)
+     */
+    protected static final class ChunkSizer {
+        /* supply or drain time below which a chunk is "fast", and above which (x4) it is "slow" */
+        private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
 
-    /**
-     * The HTTP response message.
-    */
-    protected String responseMessage = null;
+        private final int min;
+        private final int max;
+        private final IntConsumer listener;
+        private int size;
 
-    /* static variables */
+        /**
+         * Creates a sizer that starts at the smallest chunk size.
+         *
+         * @param min the smallest chunk size, including the chunk size header, 
+         *        {@code > 5}.
+         * @param max the largest chunk size, including the chunk size header.
+         * @param listener receives each newly chosen chunk size; may be {@code null}.
+         * @throws IllegalArgumentException if {@code min} is 5 or less, or {@code max} 
+         *         is less than {@code min}.
+         */
+        public ChunkSizer(int min, int max, IntConsumer listener) {
+            if (min <= 5 || max < min) {
+                throw new IllegalArgumentException("Invalid chunk length bounds: " + min + ", " + max);
+            }
+            this.min = min;
+            this.max = max;
+            this.listener = listener;
+            this.size = min;
+        }
 
-    /* do we automatically follow redirects? The default is true. */
-    private static boolean followRedirects = true;
+        /**
+         * Returns the current chunk size, including the chunk size header.
+         *
+         * @return the chunk size.
+         */
+        public int chunkSize() {
+            return size;
+        }
 
-    /**
-     * If {@code true}, the protocol will automatically follow redirects.
-    * If {@code false}, the protocol will not automatically follow
-    * redirects.
-    * <p>
-    * This field is set by the {@code setInstanceFollowRedirects}
-    * method. Its value is returned by the {@code getInstanceFollowRedirects}
-    * method.
-    * <p>
-    * Its default value is based on the value of the static followRedirects
-    * at HttpURLConnection construction time.
-    *
-    * @see     java.net.HttpURLConnection#setInstanceFollowRedirects(boolean)
-    * @see     java.net.HttpURLConnection#getInstanceFollowRedirects()
-    * @see     java.net.HttpURLConnection#setFollowRedirects(boolean)
-    */
-    protected boolean instanceFollowRedirects = followRedirects;
+        /**
+         * Returns the most payload bytes to put in the next chunk, which is the chunk 
+         * size less its framing.
+         *
+         * @return the payload size, at least 1.
+         */
+        public int payloadSize() {
+            int digits = (35 - Integer.numberOfLeadingZeros(size)) / 4;
+            return Math.max(1, size - digits - 4);
+        }
 
-    /* valid HTTP methods */
-    private static final String[] methods = {
-        "GET", "POST", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE"
-    };
+        /**
+         * Records a chunk that has been sent and adapts the chunk size.
+         *
+         * @param bytes the payload bytes in the chunk.
+         * @param supplyNanos the time the application took to supply the bytes, since 
+         *        the previous chunk was sent.
+         * @param drainNanos the time the write of the chunk was blocked.
+         */
+        public void record(int bytes, long supplyNanos, long drainNanos) {
+            int next = size;
+            if (supplyNanos > 4 * TARGET_NANOS || drainNanos > 4 * TARGET_NANOS) {
+                next = Math.max(min, size / 2);
+            } else if (supplyNanos < TARGET_NANOS && drainNanos < TARGET_NANOS
+                    && bytes >= payloadSize()) {
+                next = (int) Math.min(max, 2L * size);
+            }
+            if (next != size) {
+                size = next;
+                if (listener != null) {
+                    listener.accept(next);
+                }
+            }
+        }
+    }
 
     /**
-     * Constructor for the HttpURLConnection.
-    * @param u the URL
-    */
-    protected HttpURLConnection (URL u) {
-        super(u);
+     * Writes a request body to a channel using chunked transfer encoding, for 
+     * implementations of {@linkplain #setChunkedStreamingMode(int) chunked streaming 
+     * mode}.
+     *
+     * <p>Each chunk is framed in place: the chunk size in hexadecimal with its CRLF, the 
+     * payload and the closing CRLF are sent with a single gathering write, from framing 
+     * buffers that are allocated once per writer and reused for every chunk. Writing a 
+     * chunk therefore allocates nothing, however long the body is.</p>
+     *
+     * <p>A writer created with a {@link ChunkSizer} splits the data it is given into 
+     * chunks of the size the sizer chooses, and reports to the sizer how long each 
+     * chunk took to supply and to send.</p>
+     *
+     * <p>A {@code ChunkWriter} is not thread-safe, and the channel must be in blocking 
+     * mode.</p>
+     *
+     * @see #chunkLength
+     */
+    protected static final class ChunkWriter {
+        private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+        };
+
+        private final GatheringByteChannel channel;
+        /* chunk-size (at most 8 hex digits) CRLF */
+        private final ByteBuffer header = ByteBuffer.allocateDirect(10);
+        private final ByteBuffer crlf = ByteBuffer.allocateDirect(2);
+        private final ByteBuffer[] srcs = new ByteBuffer[3];
+        private final ChunkSizer sizer;
+        /* when the previous chunk was sent, or the writer created */
+        private long lastWrite = System.nanoTime();
+
+        /**
+         * Creates a writer that sends chunks to the given channel.
+         *
+         * @param channel the channel to write to, in blocking mode.
+         * @throws NullPointerException if {@code channel} is {@code null}.
+         */
+        public ChunkWriter(GatheringByteChannel channel) {
+            this(channel, null);
+        }
+
+        /**
+         * Creates a writer that sends chunks of an adaptive size to the given channel.
+         *
+         * @param channel the channel to write to, in blocking mode.
+         * @param sizer chooses the chunk size, or {@code null} to send each buffer 
+         *        passed to {@link #write(ByteBuffer)} as one chunk.
+         * @throws NullPointerException if {@code channel} is {@code null}.
+         */
+        public ChunkWriter(GatheringByteChannel channel, ChunkSizer sizer) {
+            this.channel = Objects.requireNonNull(channel, "channel");
+            this.sizer = sizer;
+            srcs[0] = header;
+            srcs[2] = crlf;
+        }
+
+        /**
+         * Sends the remaining bytes of {@code data}: as one chunk, or, if this writer 
+         * has a {@link ChunkSizer}, as chunks of the size it chooses. Nothing is sent if 
+         * {@code data} has no bytes remaining, since an empty chunk would end the body. 
+         * On return the position of {@code data} has been advanced to its limit.
+         *
+         * @param data the chunk payload.
+         * @throws IOException if an I/O error occurs.
+         */
+        public void write(ByteBuffer data) throws IOException {
+            if (sizer == null) {
+                writeChunk(data);
+                return;
+            }
+            int limit = data.limit();
+            try {
+                while (data.position() < limit) {
+                    data.limit(Math.min(limit, data.position() + sizer.payloadSize()));
+                    int len = data.remaining();
+                    long start = System.nanoTime();
+                    writeChunk(data);
+                    long end = System.nanoTime();
+                    sizer.record(len, start - lastWrite, end - start);
+                    lastWrite = end;
+                }
+            } finally {
+                data.limit(limit);
+            }
+        }
+
+        private void writeChunk(ByteBuffer data) throws IOException {
+            int len = data.remaining();
+            if (len == 0) {
+                return;
+            }
+            header.clear();
+            int shift = 28;
+            while (shift > 0 && (len >>> shift) == 0) {
+                shift -= 4;
+            }
+            for (; shift >= 0; shift -= 4) {
+                header.put(HEX[(len >>> shift) & 0xf]);
+            }
+            header.put((byte) '\r').put((byte) '\n').flip();
+            crlf.clear();
+            crlf.put((byte) '\r').put((byte) '\n').flip();
+            srcs[1] = data;
+            try {
+                while (crlf.hasRemaining()) {
+                    channel.write(srcs);
+                }
+            } finally {
+                srcs[1] = null;
+            }
+        }
+
+        /**
+         * Sends the last chunk, which ends the body. No trailer fields are sent.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        public void finish() throws IOException {
+            header.clear();
+            header.put((byte) '0').put((byte) '\r').put((byte) '\n')
+                  .put((byte) '\r').put((byte) '\n').flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
     }
 
     /**
-     * Sets whether HTTP redirects  (requests with response codes in the 3xx range) should
-     * be automatically followed by instances of this class. 
-     * 
-     * <p>By default, this setting is enabled ({@code true}). When disabled ({@code false}),
-     * the connection will return the 3xx status code, and it will be the responsibility of the
-     * application to manage redirection.</p>
-     * 
-     * <p><b>Important Notes:</b></p>
-     * <ul>
-     *     <li>This setting applies to all {@code HttpURLConnection} instances created after the change.</li>
-     *     <li>Applets cannot modify this setting.</li>
-     *     <li>If a security manager is present, {@code checkSetFactory()} will be called to ensure the change is allowed. 
-     *     A {@link SecurityException} will be thrown if permission is denied.</li>
-     * </ul>
-     * 
-     * <p><b>Example Usage:</b></p>
-     * <pre>{@code
-     * // Disable automatic redirects
-     * HttpURLConnection.setFollowRedirects(false);
-     * 
-     * HttpURLConnection connection = (HttpURLConnection) new URL("https://example.com").openConnection();
-     * connection.connect();
+     * Decodes a response body sent with {@code Transfer-Encoding: chunked}, for 
+     * implementations of the response input stream.
+     *
+     * <p>The decoder is an incremental state machine: each call to 
+     * {@link #decode(ByteBuffer, ByteBuffer)} consumes whatever bytes of the encoded 
+     * body are available and copies the chunk payload to the destination, so neither 
+     * whole chunks nor the whole body are ever buffered. Chunk extensions are skipped. 
+     * Trailer fields sent after the last chunk are kept, and implementations should 
+     * return them from {@link #getHeaderFieldKey(int)} and {@link #getHeaderField(int)} 
+     * after the header fields once the body has been read to the end. The trailer 
+     * section is limited to 8 KB in total, so that a server cannot make the decoder 
+     * keep an unbounded number of fields.</p>
+     *
+     * <p>A {@code ChunkReader} is not thread-safe.</p>
+     *
+     * @see ChunkWriter
+     */
+    protected static final class ChunkReader {
+        private static final int SIZE = 0;
+        private static final int EXTENSION = 1;
+        private static final int SIZE_LF = 2;
+        private static final int DATA = 3;
+        private static final int DATA_CR = 4;
+        private static final int DATA_LF = 5;
+        private static final int TRAILER = 6;
+        private static final int DONE = 7;
+
+        /* longest trailer section accepted, all fields and line ends together */
+        private static final int MAX_TRAILER_LENGTH = 8192;
+
+        private int state = SIZE;
+        /* chunk size being parsed, then the bytes left in the current chunk */
+        private long remaining;
+        private boolean sizeDigits;
+        private final StringBuilder line = new StringBuilder();
+        private int trailerLength;
+        private final List<String> trailerKeys = new ArrayList<>();
+        private final List<String> trailerValues = new ArrayList<>();
+
+        /**
+         * Creates a decoder positioned at the start of a chunked body.
+         */
+        public ChunkReader() {
+        }
+
+        /**
+         * Decodes bytes of the encoded body from {@code src}, copying chunk payload into 
+         * {@code dst}. Decoding stops when {@code src} is exhausted, {@code dst} is full, 
+         * or the end of the body has been reached; in the last case any bytes following 
+         * the body are left in {@code src}.
+         *
+         * @param src the encoded bytes received from the server.
+         * @param dst the buffer to receive the decoded payload.
+         * @return the number of payload bytes copied to {@code dst}, or {@code -1} if 
+         *         the end of the body had already been reached.
+         * @throws IOException if the encoded body is malformed, or its trailer section 
+         *         is longer than 8 KB.
+         */
+        public int decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+            if (state == DONE) {
+                return -1;
+            }
+            int n = 0;
+            while (src.hasRemaining() && state != DONE) {
+                if (state == DATA) {
+                    if (!dst.hasRemaining()) {
+                        break;
+                    }
+                    int k = (int) Math.min(remaining, Math.min(src.remaining(), dst.remaining()));
+                    int limit = src.limit();
+                    src.limit(src.position() + k);
+                    dst.put(src);
+                    src.limit(limit);
+                    n += k;
+                    remaining -= k;
+                    if (remaining == 0) {
+                        state = DATA_CR;
+                    }
+                    continue;
+                }
+                byte b = src.get();
+                switch (state) {
+                    case SIZE:
+                        int d = Character.digit(b, 16);
+                        if (d >= 0) {
+                            if (remaining > (Long.MAX_VALUE >>> 4)) {
+                                throw new IOException("Chunk size too large");
+                            }
+                            remaining = (remaining << 4) | d;
+                            sizeDigits = true;
+                        } else if (!sizeDigits) {
+                            throw new IOException("Invalid chunk size");
+                        } else if (b == ';' || b == ' ' || b == '\t') {
+                            state = EXTENSION;
+                        } else if (b == '\r') {
+                            state = SIZE_LF;
+                        } else {
+                            throw new IOException("Invalid chunk size");
+                        }
+                        break;
+                    case EXTENSION:
+                        if (b == '\r') {
+                            state = SIZE_LF;
+                        }
+                        break;
+                    case SIZE_LF:
+                        expect(b, '\n');
+                        sizeDigits = false;
+                        state = remaining == 0 ? TRAILER : DATA;
+                        break;
+                    case DATA_CR:
+                        expect(b, '\r');
+                        state = DATA_LF;
+                        break;
+                    case DATA_LF:
+                        expect(b, '\n');
+                        state = SIZE;
+                        break;
+                    case TRAILER:
+                        if (++trailerLength > MAX_TRAILER_LENGTH) {
+                            throw new IOException("Trailer section too long");
+                        }
+                        if (b == '\n') {
+                            endTrailerLine();
+                        } else if (b != '\r') {
+                            line.append((char) (b & 0xff));
+                        }
+                        break;
+                    default:
+                        throw new AssertionError(state);
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Returns whether the last chunk and the trailer fields have been decoded.
+         *
+         * @return {@code true} if the end of the body has been reached.
+         */
+        public boolean isDone() {
+            return state == DONE;
+        }
+
+        /**
+         * Returns the number of trailer fields decoded so far.
+         *
+         * @return the number of trailer fields.
+         */
+        public int trailerCount() {
+            return trailerKeys.size();
+        }
+
+        /**
+         * Returns the name of the {@code n}th trailer field.
+         *
+         * @param n the index of the trailer field, where {@code n >= 0}.
+         * @return the name of the trailer field, or {@code null} if there is no such 
+         *         field.
+         */
+        public String getTrailerKey(int n) {
+            return n >= 0 && n < trailerKeys.size() ? trailerKeys.get(n) : null;
+        }
+
+        /**
+         * Returns the value of the {@code n}th trailer field.
+         *
+         * @param n the index of the trailer field, where {@code n >= 0}.
+         * @return the value of the trailer field, or {@code null} if there is no such 
+         *         field.
+         */
+        public String getTrailerValue(int n) {
+            return n >= 0 && n < trailerValues.size() ? trailerValues.get(n) : null;
+        }
+
+        private void endTrailerLine() throws IOException {
+            if (line.length() == 0) {
+                state = DONE;
+                return;
+            }
+            int colon = line.indexOf(":");
+            if (colon <= 0) {
+                throw new IOException("Invalid trailer field");
+            }
+            trailerKeys.add(line.substring(0, colon));
+            trailerValues.add(line.substring(colon + 1).trim());
+            line.setLength(0);
+        }
+
+        private static void expect(byte b, char c) throws IOException {
+            if (b != c) {
+                throw new IOException("Invalid chunk framing");
+            }
+        }
+    }
+
+    /**
+     * The destination of a pooled connection: a host, a port and the proxy used to 
+     * reach them. Two connections with equal routes are interchangeable.
+     *
+     * @see ConnectionPool
+     */
+    protected static final class Route {
+        private final String host;
+        private final int port;
+        private final Proxy proxy;
+
+        /**
+         * Creates a route. Host names are compared without regard to case.
+         *
+         * @param host the host name or address literal.
+         * @param port the port, such as {@code 80} or {@code 443}.
+         * @param proxy the proxy, or {@code null} or {@link Proxy#NO_PROXY} for a direct 
+         *        connection.
+         * @throws NullPointerException if {@code host} is {@code null}.
+         */
+        public Route(String host, int port, Proxy proxy) {
+            this.host = host.toLowerCase(Locale.ROOT);
+            this.port = port;
+            this.proxy = proxy == null ? Proxy.NO_PROXY : proxy;
+        }
+
+        /**
+         * Returns the host of this route, in lower case.
+         *
+         * @return the host.
+         */
+        public String host() {
+            return host;
+        }
+
+        /**
+         * Returns the port of this route.
+         *
+         * @return the port.
+         */
+        public int port() {
+            return port;
+        }
+
+        /**
+         * Returns the proxy of this route.
+         *
+         * @return the proxy, {@link Proxy#NO_PROXY} for a direct connection.
+         */
+        public Proxy proxy() {
+            return proxy;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Route
+                    && host.equals(((Route) obj).host)
+                    && port == ((Route) obj).port
+                    && proxy.equals(((Route) obj).proxy);
+        }
+
+        @Override
+        public int hashCode() {
+            return (host.hashCode() * 31 + port) * 31 + proxy.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return proxy == Proxy.NO_PROXY ? host + ":" + port : host + ":" + port + " via " + proxy;
+        }
+    }
+
+    /**
+     * Opens a new connection for a route of a {@link ConnectionPool}.
+     *
+     * @param <C> the type of connection.
+     */
+    @FunctionalInterface
+    protected interface ConnectionFactory<C> {
+        /**
+         * Opens a connection.
+         *
+         * @param route the route to connect to.
+         * @return the new connection.
+         * @throws IOException if the connection cannot be made.
+         */
+        C open(Route route) throws IOException;
+    }
+
+    /**
+     * A pool of keep-alive connections, keyed by {@link Route}, for implementations to 
+     * reuse connections across {@code HttpURLConnection} instances as described under 
+     * <em>Connection Reuse</em> in the class description.
+     *
+     * <p>{@link #lease(Route, ConnectionFactory, long)} hands out an idle connection to 
+     * the route if there is one, and otherwise opens a new one with the factory. Each 
+     * route has a limit on its open connections, leased and idle together; once it is 
+     * reached, {@code lease} waits for a connection to be released. 
+     * {@link #release(Route, Closeable, boolean)} returns a connection to the pool if it 
+     * can be reused, or closes it. Idle connections are handed out most recently used 
+     * first, and are closed once they have been idle longer than the idle timeout, 
+     * either when the route is next leased from or by {@link #evictIdle()}. Before an 
+     * idle connection is handed out, it is checked with a liveness test, by default 
+     * {@link #isAlive(Closeable)}, so that a connection the server has closed while it 
+     * was idle is discarded instead of failing the next request. Routes that have no 
+     * open connections left are forgotten, so the pool does not grow with the number 
+     * of hosts ever contacted.</p>
+     *
+     * <p>Each route has its own lock, so that leases to different routes do not 
+     * contend. Connections are opened and closed outside the lock. A 
+     * {@code ConnectionPool} is thread-safe.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * ConnectionPool<SocketChannel> pool = new ConnectionPool<>(8, Duration.ofSeconds(30));
+     * Route route = new Route(url.getHost(), 80, null);
+     * SocketChannel channel = pool.lease(route,
+     *         r -> connectFastest(addressCache.resolve(r.host()), r.port(), 5000, Duration.ofMillis(250)),
+     *         getConnectTimeout());
+     * boolean reusable = false;
+     * try {
+     *     // Write the request and read the response
+     *     reusable = responseComplete && !connectionClose;
+     * } finally {
+     *     pool.release(route, channel, reusable);
+     * }
+     * }</pre>
+     *
+     * @param <C> the type of pooled connection.
+     * @see #drainBody(InputStream, long, long)
+     */
+    protected static final class ConnectionPool<C extends Closeable> {
+        private final int maxPerRoute;
+        private final long idleTimeoutNanos;
+        private final Predicate<? super C> liveness;
+        private final ConcurrentHashMap<Route, RouteState<C>> routes = new ConcurrentHashMap<>();
+
+        private static final class Idle<C> {
+            final C conn;
+            final long since;
+
+            Idle(C conn, long since) {
+                this.conn = conn;
+                this.since = since;
+            }
+        }
+
+        private static final class RouteState<C> {
+            final ReentrantLock lock = new ReentrantLock();
+            final Condition available = lock.newCondition();
+            /* most recently released first */
+            final ArrayDeque<Idle<C>> idle = new ArrayDeque<>();
+            int open;
+            /* set once the state has been removed from routes; lease then starts over */
+            boolean removed;
+        }
+
+        /**
+         * Creates a connection pool that checks idle connections with 
+         * {@link #isAlive(Closeable)} before reusing them.
+         *
+         * @param maxPerRoute the most open connections per route.
+         * @param idleTimeout how long a connection may stay idle before it is closed.
+         * @throws IllegalArgumentException if {@code maxPerRoute} or 
+         *         {@code idleTimeout} is not positive.
+         * @throws NullPointerException if {@code idleTimeout} is {@code null}.
+         */
+        public ConnectionPool(int maxPerRoute, Duration idleTimeout) {
+            this(maxPerRoute, idleTimeout, ConnectionPool::isAlive);
+        }
+
+        /**
+         * Creates a connection pool with a custom liveness check, for connections that 
+         * {@link #isAlive(Closeable)} cannot inspect, such as TLS connections.
+         *
+         * @param maxPerRoute the most open connections per route.
+         * @param idleTimeout how long a connection may stay idle before it is closed.
+         * @param liveness returns whether an idle connection can still be used; it is 
+         *        called without any lock held, just before the connection is leased.
+         * @throws IllegalArgumentException if {@code maxPerRoute} or 
+         *         {@code idleTimeout} is not positive.
+         * @throws NullPointerException if {@code idleTimeout} or {@code liveness} is 
+         *         {@code null}.
+         */
+        public ConnectionPool(int maxPerRoute, Duration idleTimeout, Predicate<? super C> liveness) {
+            if (maxPerRoute <= 0 || idleTimeout.isNegative() || idleTimeout.isZero()) {
+                throw new IllegalArgumentException("Invalid connection pool limits");
+            }
+            this.maxPerRoute = maxPerRoute;
+            this.idleTimeoutNanos = idleTimeout.toNanos();
+            this.liveness = Objects.requireNonNull(liveness, "liveness");
+        }
+
+        /**
+         * Returns whether an idle connection can still carry a request. A 
+         * {@link SocketChannel} is alive if it is open and connected, and a non-blocking 
+         * read finds neither the end of the stream, which means the server has closed 
+         * its side, nor unexpected data. Any other {@link Channel} is alive if it is 
+         * open, and other connections are assumed to be alive.
+         *
+         * @param conn the idle connection.
+         * @return {@code true} if the connection can be reused.
+         */
+        public static boolean isAlive(Closeable conn) {
+            if (conn instanceof SocketChannel) {
+                SocketChannel ch = (SocketChannel) conn;
+                if (!ch.isOpen() || !ch.isConnected()) {
+                    return false;
+                }
+                try {
+                    boolean blocking = ch.isBlocking();
+                    ch.configureBlocking(false);
+                    try {
+                        return ch.read(ByteBuffer.allocate(1)) == 0;
+                    } finally {
+                        if (blocking) {
+                            ch.configureBlocking(true);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    return false;
+                }
+            }
+            return !(conn instanceof Channel) || ((Channel) conn).isOpen();
+        }
+
+        /**
+         * Leases a connection to a route: an idle one that is still 
+         * {@linkplain #isAlive(Closeable) alive} if available, or else a new one from 
+         * {@code factory} if the route is below its limit. Otherwise waits for a 
+         * connection to the route to be released.
+         *
+         * @param route the route to connect to.
+         * @param factory opens a new connection when no idle one is available.
+         * @param timeout the most milliseconds to wait for the route to be below its 
+         *        limit; {@code 0} waits indefinitely. Opening the connection is not 
+         *        included.
+         * @return the leased connection, to be passed to 
+         *         {@link #release(Route, Closeable, boolean)} when the exchange ends.
+         * @throws SocketTimeoutException if the route stays at its limit for 
+         *         {@code timeout} milliseconds.
+         * @throws InterruptedIOException if the thread is interrupted while waiting.
+         * @throws IOException if {@code factory} fails to open a connection.
+         */
+        public C lease(Route route, ConnectionFactory<? extends C> factory, long timeout)
+                throws IOException {
+            List<C> expired = new ArrayList<>();
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            for (;;) {
+                RouteState<C> state = routes.computeIfAbsent(route, r -> new RouteState<>());
+                C candidate = null;
+                boolean reserved = false;
+                state.lock.lock();
+                try {
+                    if (state.removed) {
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    Idle<C> idle;
+                    while ((idle = state.idle.pollFirst()) != null) {
+                        if (now - idle.since < idleTimeoutNanos) {
+                            candidate = idle.conn;
+                            break;
+                        }
+                        expired.add(idle.conn);
+                        state.open--;
+                    }
+                    if (candidate == null) {
+                        if (state.open < maxPerRoute) {
+                            state.open++;
+                            reserved = true;
+                        } else if (timeout == 0) {
+                            state.available.await();
+                            continue;
+                        } else if (nanos <= 0) {
+                            throw new SocketTimeoutException("Timed out waiting for a connection to " + route);
+                        } else {
+                            nanos = state.available.awaitNanos(nanos);
+                            continue;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a connection to " + route);
+                } finally {
+                    removeIfUnused(route, state);
+                    state.lock.unlock();
+                    closeAll(expired);
+                    expired.clear();
+                }
+                if (candidate != null) {
+                    if (liveness.test(candidate)) {
+                        return candidate;
+                    }
+                    discard(route, state, candidate);
+                    continue;
+                }
+                try {
+                    return factory.open(route);
+                } catch (IOException | RuntimeException e) {
+                    discard(route, state, null);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Ends the lease of a connection. A reusable connection is kept idle for the 
+         * next lease to the route; any other connection is closed. A connection should 
+         * only be released as reusable if its last response was read to the end and 
+         * the server did not ask for the connection to be closed.
+         *
+         * @param route the route the connection was leased for.
+         * @param conn the connection returned by {@link #lease(Route, ConnectionFactory, long)}.
+         * @param reusable whether the connection can carry another exchange.
+         */
+        public void release(Route route, C conn, boolean reusable) {
+            RouteState<C> state = routes.get(route);
+            if (state == null) {
+                closeAll(List.of(conn));
+                return;
+            }
+            if (reusable) {
+                state.lock.lock();
+                try {
+                    state.idle.addFirst(new Idle<>(conn, System.nanoTime()));
+                    state.available.signal();
+                } finally {
+                    state.lock.unlock();
+                }
+            } else {
+                discard(route, state, conn);
+            }
+        }
+
+        /**
+         * Closes the connections that have been idle longer than the idle timeout, and 
+         * forgets routes that have no connections left. Implementations should call 
+         * this method periodically, so that idle connections to routes that are no 
+         * longer used are closed too.
+         *
+         * @return the number of connections closed.
+         */
+        public int evictIdle() {
+            List<C> expired = new ArrayList<>();
+            long now = System.nanoTime();
+            for (Map.Entry<Route, RouteState<C>> e : routes.entrySet()) {
+                RouteState<C> state = e.getValue();
+                state.lock.lock();
+                try {
+                    Idle<C> idle;
+                    while ((idle = state.idle.peekLast()) != null
+                            && now - idle.since >= idleTimeoutNanos) {
+                        state.idle.pollLast();
+                        expired.add(idle.conn);
+                        state.open--;
+                        state.available.signal();
+                    }
+                    removeIfUnused(e.getKey(), state);
+                } finally {
+                    state.lock.unlock();
+                }
+            }
+            closeAll(expired);
+            return expired.size();
+        }
+
+        /**
+         * Returns the number of idle connections to a route.
+         *
+         * @param route the route.
+         * @return the number of idle connections.
+         */
+        public int idleCount(Route route) {
+            RouteState<C> state = routes.get(route);
+            if (state == null) {
+                return 0;
+            }
+            state.lock.lock();
+            try {
+                return state.idle.size();
+            } finally {
+                state.lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the number of open connections to a route, leased and idle.
+         *
+         * @param route the route.
+         * @return the number of open connections.
+         */
+        public int openCount(Route route) {
+            RouteState<C> state = routes.get(route);
+            if (state == null) {
+                return 0;
+            }
+            state.lock.lock();
+            try {
+                return state.open;
+            } finally {
+                state.lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the number of routes the pool holds state for, which are the routes 
+         * with open connections and routes that have not yet been cleaned up.
+         *
+         * @return the number of routes.
+         */
+        public int routeCount() {
+            return routes.size();
+        }
+
+        /* closes conn, if any, and gives up its place in the route's limit */
+        private void discard(Route route, RouteState<C> state, C conn) {
+            state.lock.lock();
+            try {
+                state.open--;
+                state.available.signal();
+                removeIfUnused(route, state);
+            } finally {
+                state.lock.unlock();
+            }
+            if (conn != null) {
+                closeAll(List.of(conn));
+            }
+        }
+
+        /* called with the route's lock held */
+        private void removeIfUnused(Route route, RouteState<C> state) {
+            if (state.open == 0 && state.idle.isEmpty() && !state.removed) {
+                state.removed = true;
+                routes.remove(route, state);
+            }
+        }
+
+        private static void closeAll(List<? extends Closeable> conns) {
+            for (Closeable c : conns) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    // already unusable
+                }
+            }
+        }
+    }
+
+    /**
+     * A pool of direct I/O buffers in a few size classes, for implementations to use 
+     * for socket reads and writes instead of allocating fresh buffers for every 
+     * exchange.
+     *
+     * <p>Buffers come in size classes of 4 KB, 16 KB and 64 KB; 
+     * {@link #acquire(int)} returns a cleared buffer of the smallest class that holds 
+     * the requested capacity. Each platform thread keeps a small cache of released 
+     * buffers per class, and buffers beyond that go to a bounded, lock-free shared pool 
+     * where other threads can pick them up. Buffers that fit neither are left to the 
+     * garbage collector. Virtual threads, which typically live for a single exchange, 
+     * use the shared pool only: a per-thread cache would die with the thread, taking 
+     * its buffers with it.</p>
+     *
+     * <p>Implementations should acquire buffers when connecting or when a read or 
+     * write first needs one, and release them when the exchange completes or 
+     * {@link #disconnect()} is called. A buffer must not be used after it has been 
+     * released.</p>
+     *
+     * <p>{@link #hits()} and {@link #misses()} count acquisitions served from the pool 
+     * and from new allocations. If the system property 
+     * {@code http.bufferPool.debug} is {@code true}, every buffer handed out is tracked 
+     * until it is released: releasing a buffer that is not outstanding, such as a 
+     * buffer released twice, throws {@link IllegalArgumentException}, and 
+     * {@link #outstanding()} reports the buffers that have not been released.</p>
+     */
+    protected static final class BufferPool {
+        private static final int[] SIZES = { 4 * 1024, 16 * 1024, 64 * 1024 };
+        /* buffers cached per thread, and in the shared pool, per size class */
+        private static final int LOCAL_LIMIT = 4;
+        private static final int SHARED_LIMIT = 64;
+
+        private static final boolean DEBUG = Boolean.getBoolean("http.bufferPool.debug");
+
+        private static final ThreadLocal<ArrayDeque<ByteBuffer>[]> LOCAL =
+                ThreadLocal.withInitial(BufferPool::newLocalCache);
+        private static final ConcurrentLinkedQueue<ByteBuffer>[] SHARED = newSharedPool();
+        private static final AtomicInteger[] SHARED_COUNT = {
+            new AtomicInteger(), new AtomicInteger(), new AtomicInteger()
+        };
+        private static final Set<ByteBuffer> LEASED = DEBUG
+                ? Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()))
+                : null;
+
+        private static final LongAdder hits = new LongAdder();
+        private static final LongAdder misses = new LongAdder();
+
+        /* Thread.isVirtual(), looked up at run time so that the pool also runs before Java 21 */
+        private static final MethodHandle IS_VIRTUAL = isVirtualHandle();
+
+        private BufferPool() {
+        }
+
+        /**
+         * Returns a cleared direct buffer with at least the given capacity.
+         *
+         * @param capacity the minimum capacity in bytes, {@code >= 0}.
+         * @return a buffer of capacity {@code capacity} or more.
+         * @throws IllegalArgumentException if {@code capacity} is negative.
+         */
+        public static ByteBuffer acquire(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity < 0");
+            }
+            int c = sizeClass(capacity);
+            ByteBuffer buf = null;
+            if (c >= 0) {
+                if (!isVirtualThread()) {
+                    buf = LOCAL.get()[c].pollFirst();
+                }
+                if (buf == null) {
+                    buf = SHARED[c].poll();
+                    if (buf != null) {
+                        SHARED_COUNT[c].decrementAndGet();
+                    }
+                }
+            }
+            if (buf != null) {
+                hits.increment();
+                buf.clear();
+            } else {
+                misses.increment();
+                buf = ByteBuffer.allocateDirect(c >= 0 ? SIZES[c] : capacity);
+            }
+            if (DEBUG) {
+                LEASED.add(buf);
+            }
+            return buf;
+        }
+
+        /**
+         * Returns a buffer obtained from {@link #acquire(int)} to the pool.
+         *
+         * @param buf the buffer to release.
+         * @throws IllegalArgumentException in debug mode, if {@code buf} is not an 
+         *         outstanding buffer from this pool.
+         * @throws NullPointerException if {@code buf} is {@code null}.
+         */
+        public static void release(ByteBuffer buf) {
+            Objects.requireNonNull(buf, "buf");
+            if (DEBUG && !LEASED.remove(buf)) {
+                throw new IllegalArgumentException("Buffer is not outstanding");
+            }
+            int c = Arrays.binarySearch(SIZES, buf.capacity());
+            if (c < 0 || !buf.isDirect()) {
+                return;
+            }
+            ArrayDeque<ByteBuffer> local = isVirtualThread() ? null : LOCAL.get()[c];
+            if (local != null && local.size() < LOCAL_LIMIT) {
+                local.addFirst(buf);
+            } else if (SHARED_COUNT[c].incrementAndGet() <= SHARED_LIMIT) {
+                SHARED[c].offer(buf);
+            } else {
+                SHARED_COUNT[c].decrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the number of acquisitions served by a pooled buffer.
+         *
+         * @return the number of pool hits.
+         */
+        public static long hits() {
+            return hits.sum();
+        }
+
+        /**
+         * Returns the number of acquisitions that allocated a new buffer.
+         *
+         * @return the number of pool misses.
+         */
+        public static long misses() {
+            return misses.sum();
+        }
+
+        /**
+         * Returns the number of buffers acquired but not yet released. Buffers are only 
+         * tracked in debug mode; otherwise this method returns {@code -1}.
+         *
+         * @return the number of outstanding buffers, or {@code -1} if not in debug mode.
+         */
+        public static int outstanding() {
+            return DEBUG ? LEASED.size() : -1;
+        }
+
+        private static boolean isVirtualThread() {
+            if (IS_VIRTUAL == null) {
+                return false;
+            }
+            try {
+                return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        private static MethodHandle isVirtualHandle() {
+            try {
+                return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+                        MethodType.methodType(boolean.class));
+            } catch (ReflectiveOperationException e) {
+                return null;    // no virtual threads on this runtime
+            }
+        }
+
+        private static int sizeClass(int capacity) {
+            for (int c = 0; c < SIZES.length; c++) {
+                if (capacity <= SIZES[c]) {
+                    return c;
+                }
+            }
+            return -1;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static ArrayDeque<ByteBuffer>[] newLocalCache() {
+            ArrayDeque<ByteBuffer>[] cache = new ArrayDeque[SIZES.length];
+            for (int c = 0; c < cache.length; c++) {
+                cache[c] = new ArrayDeque<>(LOCAL_LIMIT);
+            }
+            return cache;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static ConcurrentLinkedQueue<ByteBuffer>[] newSharedPool() {
+            ConcurrentLinkedQueue<ByteBuffer>[] pool = new ConcurrentLinkedQueue[SIZES.length];
+            for (int c = 0; c < pool.length; c++) {
+                pool[c] = new ConcurrentLinkedQueue<>();
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Resolves a host name to the addresses a connection may be made to.
+     *
+     * <p>This is the resolver used by {@link AddressCache}. The system resolver is 
+     * {@link InetAddress#getAllByName(String)}; tests can supply an in-process 
+     * implementation instead.</p>
+     */
+    @FunctionalInterface
+    protected interface HostResolver {
+        /**
+         * Resolves a host name.
+         *
+         * @param host the host name to resolve.
+         * @return the addresses of the host, in the order they should be tried; never 
+         *         empty.
+         * @throws UnknownHostException if the host name cannot be resolved.
+         */
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    /**
+     * A cache of host name resolutions, for implementations to obtain the candidate 
+     * addresses to connect to without calling the resolver on every connection.
+     *
+     * <p>Each host is cached for its own time-to-live, counted from when it was 
+     * resolved. Once three quarters of that time has passed, the next lookup still 
+     * returns the cached addresses but also starts a refresh on the refresh executor, 
+     * so that a host in regular use is re-resolved before it expires and lookups do 
+     * not wait for the resolver. If a refresh fails, the cached addresses keep being 
+     * returned, and the next refresh is attempted only after the negative time-to-live, 
+     * or a sixteenth of the time-to-live if that is longer, so that a resolver outage 
+     * does not turn every lookup into a resolver call. If the refresh executor rejects 
+     * the refresh, the cached addresses are returned and a later lookup tries again. 
+     * Failed resolutions are cached too, for a separate and usually shorter time, so a 
+     * missing host does not reach the resolver on every attempt.</p>
+     *
+     * <p>At most one resolution of a host is in progress at a time. Lookups that need 
+     * the resolver while it is already resolving the host, whether for another lookup 
+     * or for a refresh, wait for that resolution and share its result or failure, so 
+     * that many connections to a host that is not cached, or has just expired, cause a 
+     * single resolver call.</p>
+     *
+     * <p>An {@code AddressCache} is thread-safe.</p>
+     *
+     * @see HostResolver
+     */
+    protected static final class AddressCache {
+        private final HostResolver resolver;
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+        private final Executor refreshExecutor;
+        private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+        /* resolutions in progress, completed with the new entry or the resolver's failure */
+        private final ConcurrentHashMap<String, CompletableFuture<Entry>> inFlight =
+                new ConcurrentHashMap<>();
+
+        private static final class Entry {
+            final InetAddress[] addresses;    // null if resolution failed
+            final long expires;
+            final AtomicBoolean refreshing = new AtomicBoolean();
+            /* when the next lookup may start a refresh */
+            volatile long refreshAt;
+
+            Entry(InetAddress[] addresses, long resolved, long ttl) {
+                this.addresses = addresses;
+                this.expires = resolved + ttl;
+                this.refreshAt = resolved + ttl / 4 * 3;
+            }
+        }
+
+        /**
+         * Creates a cache that resolves host names with the given resolver.
+         *
+         * @param resolver the resolver to use, such as 
+         *        {@code InetAddress::getAllByName}.
+         * @param ttl how long a successful resolution is cached.
+         * @param negativeTtl how long a failed resolution is cached; zero disables 
+         *        negative caching.
+         * @param refreshExecutor the executor on which hosts are re-resolved ahead of 
+         *        expiry.
+         * @throws IllegalArgumentException if {@code ttl} is not positive or 
+         *         {@code negativeTtl} is negative.
+         * @throws NullPointerException if any argument is {@code null}.
+         */
+        public AddressCache(HostResolver resolver, Duration ttl, Duration negativeTtl,
+                            Executor refreshExecutor) {
+            this.resolver = Objects.requireNonNull(resolver, "resolver");
+            this.refreshExecutor = Objects.requireNonNull(refreshExecutor, "refreshExecutor");
+            if (ttl.isNegative() || ttl.isZero() || negativeTtl.isNegative()) {
+                throw new IllegalArgumentException("Invalid time-to-live");
+            }
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        /**
+         * Returns the addresses of a host, from the cache if possible.
+         *
+         * @param host the host name to resolve.
+         * @return the addresses of the host, in the order they should be tried.
+         * @throws UnknownHostException if the host name cannot be resolved, or a failed 
+         *         resolution of it is cached.
+         * @throws NullPointerException if {@code host} is {@code null}.
+         */
+        public List<InetAddress> resolve(String host) throws UnknownHostException {
+            Entry e = entries.get(host);
+            long now = System.nanoTime();
+            if (e == null || now - e.expires >= 0) {
+                e = lookup(host, e, true);
+            } else if (e.addresses != null
+                    && now - e.refreshAt >= 0
+                    && e.refreshing.compareAndSet(false, true)) {
+                Entry stale = e;
+                try {
+                    refreshExecutor.execute(() -> refresh(host, stale));
+                } catch (RejectedExecutionException ex) {
+                    // the cached addresses are still valid; a later lookup retries
+                    e.refreshing.set(false);
+                }
+            }
+            if (e.addresses == null) {
+                throw new UnknownHostException(host);
+            }
+            return List.of(e.addresses);
+        }
+
+        /**
+         * Removes a host from the cache, so that the next lookup resolves it again.
+         *
+         * @param host the host name to remove.
+         */
+        public void invalidate(String host) {
+            entries.remove(host);
+        }
+
+        /*
+         * Resolves a host whose cached entry was seen as seen, or joins the resolution 
+         * already in progress for it. The caller that starts the resolution runs the 
+         * resolver itself, unless another one replaced seen with a fresh entry meanwhile.
+         */
+        private Entry lookup(String host, Entry seen, boolean cacheFailure)
+                throws UnknownHostException {
+            CompletableFuture<Entry> mine = new CompletableFuture<>();
+            CompletableFuture<Entry> running = inFlight.putIfAbsent(host, mine);
+            if (running == null) {
+                try {
+                    Entry current = entries.get(host);
+                    if (current != null && current != seen
+                            && System.nanoTime() - current.expires < 0) {
+                        mine.complete(current);
+                    } else {
+                        mine.complete(resolveNow(host, cacheFailure));
+                    }
+                } catch (UnknownHostException | RuntimeException ex) {
+                    mine.completeExceptionally(ex);
+                } finally {
+                    inFlight.remove(host, mine);
+                }
+                running = mine;
+            }
+            try {
+                return running.join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof UnknownHostException) {
+                    // a new exception, so that each waiting thread gets its own stack trace
+                    UnknownHostException e = new UnknownHostException(cause.getMessage());
+                    e.initCause(cause);
+                    throw e;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw ex;
+            }
+        }
+
+        private Entry resolveNow(String host, boolean cacheFailure) throws UnknownHostException {
+            long now = System.nanoTime();
+            Entry e;
+            try {
+                e = new Entry(resolver.resolve(host).clone(), now, ttlNanos);
+            } catch (UnknownHostException ex) {
+                if (cacheFailure && negativeTtlNanos > 0) {
+                    entries.put(host, new Entry(null, now, negativeTtlNanos));
+                }
+                throw ex;
+            }
+            entries.put(host, e);
+            return e;
+        }
+
+        private void refresh(String host, Entry stale) {
+            try {
+                lookup(host, stale, false);
+            } catch (UnknownHostException | RuntimeException ex) {
+                // keep serving the cached addresses until they expire, and back off
+                Entry e = entries.get(host);
+                if (e != null && e.addresses != null) {
+                    e.refreshAt = System.nanoTime() + Math.max(negativeTtlNanos, ttlNanos / 16);
+                    e.refreshing.set(false);
+                }
+            }
+        }
+    }
+
+    /*
+     * smoothed connect latency per address, in nanoseconds; Long.MAX_VALUE after a failure.
+     * In access order, and trimmed to MAX_LATENCY_ENTRIES by dropping the addresses used
+     * least recently, so that connecting to many hosts cannot grow it without bound.
+     */
+    private static final int MAX_LATENCY_ENTRIES = 1024;
+    private static final LinkedHashMap<InetAddress, Long> connectLatency =
+            new LinkedHashMap<>(64, 0.75f, true);
+    private static final ReentrantLock latencyLock = new ReentrantLock();
+
+    /**
+     * Connects to the first of several addresses of a host to accept the connection, 
+     * using staggered parallel attempts ("Happy Eyeballs", RFC 8305).
+     *
+     * <p>Addresses with a lower {@linkplain #getConnectLatency(InetAddress) connect 
+     * latency} are tried first, and IPv6 and IPv4 addresses are then interleaved. A 
+     * connection attempt is started for the first address; if it has not completed 
+     * after {@code stagger}, or fails, an attempt for the next address is started 
+     * without abandoning the earlier ones. The first attempt to complete wins, and all 
+     * other attempts are closed. An unreachable address therefore delays the 
+     * connection by {@code stagger} instead of by the whole connect timeout.</p>
+     *
+     * <p>The time each attempt took, from its own start, is recorded per address, so 
+     * that later connections and the connection cache can prefer addresses that connect 
+     * quickly. An attempt still pending when another wins is recorded with the time it 
+     * has been open, if that is at least as long as the winner took. Latencies are kept 
+     * for the 1024 addresses used most recently.</p>
+     *
+     * @param addresses the candidate addresses of the host, for example from 
+     *        {@link AddressCache#resolve(String)}; must not be empty.
+     * @param port the port to connect to.
+     * @param timeout the connect timeout in milliseconds, as for 
+     *        {@link #setConnectTimeout(int)}; {@code 0} means no timeout.
+     * @param stagger the delay before starting the attempt for the next address.
+     * @return the connected channel, in blocking mode.
+     * @throws SocketTimeoutException if no attempt completes within {@code timeout}.
+     * @throws IOException if every attempt fails; the failures of the other attempts 
+     *         are suppressed in it.
+     * @throws IllegalArgumentException if {@code addresses} is empty or 
+     *         {@code timeout} is negative.
+     *
+     * @see #getConnectLatency(InetAddress)
+     */
+    protected static SocketChannel connectFastest(List<InetAddress> addresses, int port,
+                                                  int timeout, Duration stagger)
+            throws IOException {
+        if (addresses.isEmpty() || timeout < 0) {
+            throw new IllegalArgumentException(addresses.isEmpty() ? "no addresses" : "timeout < 0");
+        }
+        List<InetAddress> order = connectOrder(addresses);
+        long staggerNanos = stagger.toNanos();
+        long start = System.nanoTime();
+        long deadline = timeout > 0 ? start + timeout * 1_000_000L : Long.MAX_VALUE;
+        Map<SocketChannel, Long> attempts = new HashMap<>();
+        SocketChannel winner = null;
+        IOException failure = null;
+        int next = 0;
+        long nextAttempt = start;
+        Selector selector = Selector.open();
+        try {
+            while (winner == null) {
+                long now = System.nanoTime();
+                if (next < order.size() && (now - nextAttempt >= 0 || attempts.isEmpty())) {
+                    InetAddress addr = order.get(next++);
+                    nextAttempt = now + staggerNanos;
+                    SocketChannel ch = SocketChannel.open();
+                    attempts.put(ch, now);
+                    try {
+                        ch.configureBlocking(false);
+                        if (ch.connect(new InetSocketAddress(addr, port))) {
+                            winner = connected(ch, addr, now);
+                        } else {
+                            ch.register(selector, SelectionKey.OP_CONNECT, addr);
+                        }
+                    } catch (IOException e) {
+                        failure = failed(failure, e, attempts, ch, addr);
+                        nextAttempt = now;
+                    }
+                    continue;
+                }
+                if (attempts.isEmpty()) {
+                    throw failure;
+                }
+                if (deadline != Long.MAX_VALUE && now - deadline >= 0) {
+                    SocketTimeoutException e = new SocketTimeoutException("Connect timed out");
+                    if (failure != null) {
+                        e.addSuppressed(failure);
+                    }
+                    throw e;
+                }
+                long wait = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - now;
+                if (next < order.size()) {
+                    wait = Math.min(wait, nextAttempt - now);
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel ch = (SocketChannel) key.channel();
+                    InetAddress addr = (InetAddress) key.attachment();
+                    try {
+                        if (winner == null && ch.finishConnect()) {
+                            key.cancel();
+                            winner = connected(ch, addr, attempts.get(ch));
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        failure = failed(failure, e, attempts, ch, addr);
+                        nextAttempt = System.nanoTime();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            // an attempt still pending has taken at least as long as it has been open,
+            // which only says something when that is at least as long as the winner took
+            long now = System.nanoTime();
+            Long winnerStarted = winner == null ? null : attempts.get(winner);
+            long winnerTook = winnerStarted == null ? 0 : now - winnerStarted;
+            for (SelectionKey key : selector.keys()) {
+                SocketChannel ch = (SocketChannel) key.channel();
+                Long started = ch == winner ? null : attempts.remove(ch);
+                if (started != null && now - started >= winnerTook) {
+                    recordLatency((InetAddress) key.attachment(), now - started);
+                }
+            }
+            for (SocketChannel ch : attempts.keySet()) {
+                if (ch != winner) {
+                    closeQuietly(ch);
+                }
+            }
+            selector.close();
+        }
+        winner.configureBlocking(true);
+        return winner;
+    }
+
+    /**
+     * Returns the smoothed time taken to connect to an address by 
+     * {@link #connectFastest(List, int, int, Duration)}.
+     *
+     * @param address the address.
+     * @return the connect latency in nanoseconds, {@code Long.MAX_VALUE} if the last 
+     *         attempt to connect to the address failed, or {@code -1} if no attempt has 
+     *         been recorded.
+     */
+    protected static long getConnectLatency(InetAddress address) {
+        latencyLock.lock();
+        try {
+            Long latency = connectLatency.get(address);
+            return latency != null ? latency : -1;
+        } finally {
+            latencyLock.unlock();
+        }
+    }
+
+    private static List<InetAddress> connectOrder(List<InetAddress> addresses) {
+        List<InetAddress> sorted = new ArrayList<>(addresses);
+        // unknown latencies sort between the known ones and the failed ones
+        sorted.sort(Comparator.comparingLong(a -> {
+            long l = getConnectLatency(a);
+            return l == -1 ? Long.MAX_VALUE - 1 : l;
+        }));
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        Class<?> family = sorted.get(0).getClass();
+        for (InetAddress a : sorted) {
+            (a.getClass() == family ? first : second).add(a);
+        }
+        List<InetAddress> order = new ArrayList<>(sorted.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                order.add(first.get(i));
+            }
+            if (i < second.size()) {
+                order.add(second.get(i));
+            }
+        }
+        return order;
+    }
+
+    private static SocketChannel connected(SocketChannel ch, InetAddress addr, long started) {
+        recordLatency(addr, System.nanoTime() - started);
+        return ch;
+    }
+
+    private static IOException failed(IOException failure, IOException e,
+                                      Map<SocketChannel, Long> attempts,
+                                      SocketChannel ch, InetAddress addr) {
+        attempts.remove(ch);
+        closeQuietly(ch);
+        putLatency(addr, Long.MAX_VALUE);
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    private static void recordLatency(InetAddress addr, long sample) {
+        latencyLock.lock();
+        try {
+            Long old = connectLatency.get(addr);
+            putLatency(addr, old == null || old == Long.MAX_VALUE ? sample : (old * 3 + sample) / 4);
+        } finally {
+            latencyLock.unlock();
+        }
+    }
+
+    private static void putLatency(InetAddress addr, long latency) {
+        latencyLock.lock();
+        try {
+            connectLatency.put(addr, latency);
+            if (connectLatency.size() > MAX_LATENCY_ENTRIES) {
+                Iterator<InetAddress> eldest = connectLatency.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        } finally {
+            latencyLock.unlock();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Returns the value of the HTTP header field at the specified index {@code n}. 
+     * This method allows access to HTTP header values returned by the server in 
+     * the response. Header fields are indexed starting from 0, where some 
+     * implementations may treat the 0th field as the status line (e.g., "HTTP/1.1 200 OK").
+     *
+     * <p>This method can be used in conjunction with {@link #getHeaderFieldKey(int)} 
+     * to iterate over all the headers in the HTTP response. For example, you can 
+     * retrieve both the key and value of each header by using the two methods 
+     * together in a loop.
+     *
+     * <p>If the header at the specified index does not exist, this method returns 
+     * {@code null}. It also returns {@code null} if the index is out of bounds.
+     *
+     * <p><b>Note:</b> Implementations should make positional access constant-time, so 
+     * that iterating over all {@code n} headers with this method and 
+     * {@link #getHeaderFieldKey(int)} costs time proportional to the total header size 
+     * rather than to {@code n} squared. A suitable representation is the raw header 
+     * block kept as bytes together with an array of field offsets, materializing a 
+     * {@code String} only for the keys and values that are actually requested.
+     *
+     * <p><b>Default Behavior:</b> Returns the value of the {@code n}th field of 
+     * {@link #responseHeaders}, or {@code null} if that field is not set. 
+     * {@link HeaderBlock} provides the representation described above.</p>
+     *
+     * <p>For a response sent with {@code Transfer-Encoding: chunked}, any trailer fields 
+     * follow the header fields, and become available at the indexes after the last 
+     * header field once the response body has been read to the end.
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * httpConn.setRequestMethod("GET");
+     * httpConn.connect();
+     * 
+     * // Iterate over all headers
+     * for (int i = 0;; i++) {
+     *     String headerKey = httpConn.getHeaderFieldKey(i);
+     *     String headerValue = httpConn.getHeaderField(i);
+     *     if (headerKey == null && headerValue == null) {
+     *         break; // No more headers
+     *     }
+     *     System.out.println(headerKey + ": " + headerValue);
+     * }
+     * }</pre>
+     *
+     * @param n the index of the header field, where {@code n >= 0}.
+     * @return the value of the nth header field, or {@code null} if the header 
+     *         does not exist or if the index is out of bounds.
+     *
+     * @see java.net.HttpURLConnection#getHeaderFieldKey(int)
+     * @see java.net.URLConnection#getHeaderField(int)
+     */
+    @Override
+    public String getHeaderField(int n) {
+        HeaderBlock headers = responseHeaders;
+        return headers == null ? null : headers.getValue(n);
+    }
+
+    /**
+     * An {@code int} representing the three digit HTTP Status-Code.
+    * <ul>
+    * <li> 1xx: Informational
+    * <li> 2xx: Success
+    * <li> 3xx: Redirection
+    * <li> 4xx: Client Error
+    * <li> 5xx: Server Error
+    * </ul>
+    */
+    protected int responseCode = -1;
+
+    /**
+     * The HTTP response message.
+    */
+    protected String responseMessage = null;
+
+    /* static variables */
+
+    /* do we automatically follow redirects? The default is true. */
+    private static boolean followRedirects = true;
+
+    /**
+     * If {@code true}, the protocol will automatically follow redirects.
+    * If {@code false}, the protocol will not automatically follow
+    * redirects.
+    * <p>
+    * This field is set by the {@code setInstanceFollowRedirects}
+    * method. Its value is returned by the {@code getInstanceFollowRedirects}
+    * method.
+    * <p>
+    * Its default value is based on the value of the static followRedirects
+    * at HttpURLConnection construction time.
+    *
+    * @see     java.net.HttpURLConnection#setInstanceFollowRedirects(boolean)
+    * @see     java.net.HttpURLConnection#getInstanceFollowRedirects()
+    * @see     java.net.HttpURLConnection#setFollowRedirects(boolean)
+    */
+    protected boolean instanceFollowRedirects = followRedirects;
+
+    /**
+     * The HTTP request methods accepted by {@link #setRequestMethod(String)}.
+     *
+     * <p>The {@linkplain #name() name} of each constant is the canonical {@code String} 
+     * for the method, and is the instance returned by {@link #getRequestMethod()} once 
+     * the method has been set, so request methods can be compared by identity.</p>
+     *
+     * @see #setRequestMethod(RequestMethod)
+     */
+    public enum RequestMethod {
+        /** The {@code GET} method. */
+        GET,
+        /** The {@code POST} method. */
+        POST,
+        /** The {@code HEAD} method. */
+        HEAD,
+        /** The {@code OPTIONS} method. */
+        OPTIONS,
+        /** The {@code PUT} method. */
+        PUT,
+        /** The {@code DELETE} method. */
+        DELETE,
+        /** The {@code TRACE} method. */
+        TRACE;
+
+        /**
+         * Returns whether the method is safe, that is read-only: {@code GET}, 
+         * {@code HEAD}, {@code OPTIONS} or {@code TRACE}.
+         *
+         * @return {@code true} if the method is safe.
+         */
+        public boolean isSafe() {
+            return this == GET || this == HEAD || this == OPTIONS || this == TRACE;
+        }
+
+        /**
+         * Returns whether the method is idempotent, so that a request may be repeated 
+         * with the same effect as sending it once: the safe methods, {@code PUT} and 
+         * {@code DELETE}.
+         *
+         * @return {@code true} if the method is idempotent.
+         */
+        public boolean isIdempotent() {
+            return this != POST;
+        }
+    }
+
+    /*
+     * Returns the valid HTTP method with the given name, or null. Dispatches on
+     * length and first character, so at most one string comparison is made.
+     */
+    private static RequestMethod lookupMethod(String method) {
+        RequestMethod m;
+        switch (method.length()) {
+            case 3:
+                m = method.charAt(0) == 'G' ? RequestMethod.GET
+                        : method.charAt(0) == 'P' ? RequestMethod.PUT : null;
+                break;
+            case 4:
+                m = method.charAt(0) == 'P' ? RequestMethod.POST
+                        : method.charAt(0) == 'H' ? RequestMethod.HEAD : null;
+                break;
+            case 5:
+                m = RequestMethod.TRACE;
+                break;
+            case 6:
+                m = RequestMethod.DELETE;
+                break;
+            case 7:
+                m = RequestMethod.OPTIONS;
+                break;
+            default:
+                return null;
+        }
+        return m != null && m.name().equals(method) ? m : null;
+    }
+
+    /**
+     * Constructor for the HttpURLConnection.
+    * @param u the URL
+    */
+    protected HttpURLConnection (URL u) {
+        super(u);
+    }
+
+    /**
+     * Sets whether HTTP redirects  (requests with response codes in the 3xx range) should
+     * be automatically followed by instances of this class. 
+     * 
+     * <p>By default, this setting is enabled ({@code true}). When disabled ({@code false}),
+     * the connection will return the 3xx status code, and it will be the responsibility of the
+     * application to manage redirection.</p>
+     * 
+     * <p><b>Important Notes:</b></p>
+     * <ul>
+     *     <li>This setting applies to all {@code HttpURLConnection} instances created after the change.</li>
+     *     <li>Applets cannot modify this setting.</li>
+     *     <li>If a security manager is present, {@code checkSetFactory()} will be called to ensure the change is allowed. 
+     *     A {@link SecurityException} will be thrown if permission is denied.</li>
+     * </ul>
+     * 
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * // Disable automatic redirects
+     * HttpURLConnection.setFollowRedirects(false);
+     * 
+     * HttpURLConnection connection = (HttpURLConnection) new URL("https://example.com").openConnection();
+     * connection.connect();
+     * 
+     * int responseCode = connection.getResponseCode();
+     * if (responseCode == HttpURLConnection.HTTP_MOVED_TEMP) {
+     *     // Handle the redirection manually
+     *     String newLocation = connection.getHeaderField("Location");
+     *     System.out.println("Redirected to: " + newLocation);
+     * }
+     * }</pre>
+     * 
+     * <p>This method changes the default redirection behavior for all connections. 
+     * For controlling redirects on a per-connection basis, use {@link #setInstanceFollowRedirects(boolean)}.</p>
+     * 
+     * @param set a {@code boolean} specifying whether to follow HTTP redirects. Default is {@code true}.
+     * @throws SecurityException if a security manager exists and denies the operation via {@code checkSetFactory()}.
+     * 
+     * @see SecurityManager#checkSetFactory()
+     * @see #getFollowRedirects()
+     * @see #setInstanceFollowRedirects(boolean)
+     */
+    public static void setFollowRedirects(boolean set) {
+        @SuppressWarnings("removal")
+        SecurityManager sec = System.getSecurityManager();
+        if (sec != null) {
+            // seems to be the best check here...
+            sec.checkSetFactory();
+        }
+        followRedirects = set;
+    }
+
+    /**
+     * Returns a {@code boolean} indicating whether HTTP redirects (3xx responses) 
+     * should be automatically followed by the current connection. If redirects 
+     * are followed, the client will automatically handle 3xx status codes 
+     * by making additional requests to the new location provided in the 
+     * response's "Location" header.
+     *
+     * <p>This is a global setting for all HTTP connections and affects 
+     * all instances of {@code HttpURLConnection}. The default value is 
+     * {@code true}, meaning redirects are automatically followed unless 
+     * explicitly disabled.
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * boolean followRedirects = HttpURLConnection.getFollowRedirects();
+     * if (followRedirects) {
+     *     System.out.println("Redirects are automatically followed.");
+     * } else {
+     *     System.out.println("Redirects are not automatically followed.");
+     * }
+     * }</pre>
+     *
+     * @return {@code true} if HTTP redirects are automatically followed, 
+     *         {@code false} if they are not.
+     *
+     * @see java.net.HttpURLConnection#setFollowRedirects(boolean)
+     */
+    public static boolean getFollowRedirects() {
+        return followRedirects;
+    }
+
+
+    /**
+     * Configures whether HTTP redirects (requests with response code 3xx) should 
+     * be automatically followed by this {@code HttpURLConnection} instance.
+     * 
+     * <p>When set to {@code true}, this instance will automatically follow HTTP 
+     * redirects. When set to {@code false}, the instance will not follow redirects 
+     * and the client code must handle redirect responses manually. This setting 
+     * affects only the current {@code HttpURLConnection} instance and does not 
+     * alter the behavior of other instances or the default behavior of the class.</p>
+     * 
+     * <p><b>Behavior and Scope:</b></p>
+     * <ul>
+     *   <li>This method's setting applies only to the current instance of 
+     *       {@code HttpURLConnection}. It does not affect other instances of 
+     *       {@code HttpURLConnection}, even if they are created from the same 
+     *       URL or use the same connection factory.</li>
+     *   <li>To affect redirect behavior globally, use the static method 
+     *       {@link #setFollowRedirects(boolean)}. This static method sets the 
+     *       default redirect-following behavior for all instances of 
+     *       {@code HttpURLConnection} created thereafter.</li>
+     *   <li>Changing this setting on an instance does not retroactively affect 
+     *       connections that were already established or other instances created 
+     *       prior to this change.</li>
+     * </ul>
+     * 
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection connection = (HttpURLConnection) new URL("https://example.com").openConnection();
+     * connection.setInstanceFollowRedirects(false); // Disable automatic redirect following
+     * // Handle redirects manually if needed
+     * }</pre>
+     * 
+     * <p><b>Important Notes:</b></p>
+     * <ul>
+     *   <li>Ensure this method is called before establishing a connection to 
+     *       apply the desired redirect behavior.</li>
+     *   <li>For global redirect behavior settings affecting all instances, use 
+     *       {@link #setFollowRedirects(boolean)}.</li>
+     * </ul>
+     * 
+     * @param followRedirects a {@code boolean} indicating whether HTTP redirects should 
+     *        be automatically followed by this instance. {@code true} to follow redirects, 
+     *        {@code false} to handle them manually.
+     * 
+     * @see #getInstanceFollowRedirects()
+     * @see #setFollowRedirects(boolean)
+     * @since 1.3
+     */
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        instanceFollowRedirects = followRedirects;
+    }
+
+    /**
+     * Returns the value of this {@code HttpURLConnection}'s {@code instanceFollowRedirects} field, 
+     * which indicates whether this specific connection instance will automatically follow HTTP redirects 
+     * (3xx responses). This setting affects only this instance, not the global setting.
+     *
+     * <p>By default, the value is inherited from the global setting. You can control it for this instance 
+     * using {@link #setInstanceFollowRedirects(boolean)}.
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * boolean followRedirects = httpConn.getInstanceFollowRedirects();
+     * System.out.println("Instance follows redirects: " + followRedirects);
+     * }</pre>
+     *
+     * @return {@code true} if this instance will follow redirects automatically, 
+     *         {@code false} otherwise.
+     *
+     * @since 1.3
+     * @see java.net.HttpURLConnection#instanceFollowRedirects
+     * @see java.net.HttpURLConnection#setInstanceFollowRedirects(boolean)
+     */
+    public boolean getInstanceFollowRedirects() {
+        return instanceFollowRedirects;
+    }
+
+    /* maximum number of redirects remembered, and followed in one resolution */
+    private static final int REDIRECT_MEMO_SIZE = 1024;
+    private static final int MAX_REDIRECTS = 20;
+
+    /*
+     * Remembered redirects of GET and HEAD requests, from request URL to target. Lookups
+     * do not lock; when the memo is full, entries are evicted in CLOCK order (those not
+     * used since the hand last passed them), which approximates LRU. Only eviction is
+     * serialized, by redirectEvictionLock, which also guards the hand.
+     */
+    private static final ConcurrentHashMap<String, RememberedRedirect> redirectMemo =
+            new ConcurrentHashMap<>();
+    private static final ReentrantLock redirectEvictionLock = new ReentrantLock();
+    private static Iterator<Map.Entry<String, RememberedRedirect>> redirectEvictionHand;
+
+    private static final class RememberedRedirect {
+        final String target;
+        final long expires;
+        volatile boolean used;
+
+        RememberedRedirect(String target, long expires) {
+            this.target = target;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Remembers the redirect in the current response, so that later requests for the 
+     * same URL can go straight to its target. Implementations that follow redirects 
+     * should call this method for each redirect response they follow.
+     *
+     * <p>Only redirects of {@code GET} and {@code HEAD} requests are remembered, since a 
+     * redirect of any other request may depend on its method and body; for example, a 
+     * {@link #HTTP_SEE_OTHER} response to a {@code POST} does not mean that the 
+     * {@code POST} itself should be sent to the new location. 
+     * {@link #HTTP_MOVED_PERM} and {@link #HTTP_PERM_REDIRECT} responses are 
+     * remembered until evicted, unless their {@code Cache-Control} or {@code Expires} 
+     * header fields give a shorter {@linkplain #getFreshnessLifetime() freshness 
+     * lifetime}. {@link #HTTP_MOVED_TEMP}, {@link #HTTP_SEE_OTHER} and 
+     * {@link #HTTP_TEMP_REDIRECT} responses are remembered only while fresh, which 
+     * requires an explicit lifetime. Other responses are ignored. The number of 
+     * remembered redirects is bounded, and redirects that have not been used recently 
+     * are evicted first.</p>
+     *
+     * @param target the absolute URL given by the response's {@code Location} header 
+     *        field.
+     * @throws IOException if the response code cannot be obtained.
+     * @throws NullPointerException if {@code target} is {@code null}.
+     *
+     * @see #resolveRedirects(String, String)
+     */
+    protected void rememberRedirect(String target) throws IOException {
+        Objects.requireNonNull(target, "target");
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return;
+        }
+        int code = getResponseCode();
+        long lifetime = getFreshnessLifetime();
+        long expires;
+        if (code == HTTP_MOVED_PERM || code == HTTP_PERM_REDIRECT) {
+            expires = lifetime < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + lifetime;
+        } else if (code == HTTP_MOVED_TEMP || code == HTTP_SEE_OTHER
+                || code == HTTP_TEMP_REDIRECT) {
+            expires = lifetime <= 0 ? 0 : System.currentTimeMillis() + lifetime;
+        } else {
+            return;
+        }
+        String from = url.toExternalForm();
+        if (expires <= System.currentTimeMillis()) {
+            redirectMemo.remove(from);
+            return;
+        }
+        redirectMemo.put(from, new RememberedRedirect(target, expires));
+        if (redirectMemo.size() > REDIRECT_MEMO_SIZE && redirectEvictionLock.tryLock()) {
+            try {
+                evictRedirects();
+            } finally {
+                redirectEvictionLock.unlock();
+            }
+        }
+    }
+
+    /* called with redirectEvictionLock held */
+    private static void evictRedirects() {
+        long now = System.currentTimeMillis();
+        // two sweeps clear every used flag, so the loop ends even if all were used
+        for (int steps = 0; redirectMemo.size() > REDIRECT_MEMO_SIZE
+                && steps < 2 * (REDIRECT_MEMO_SIZE + 1); steps++) {
+            if (redirectEvictionHand == null || !redirectEvictionHand.hasNext()) {
+                redirectEvictionHand = redirectMemo.entrySet().iterator();
+                if (!redirectEvictionHand.hasNext()) {
+                    return;
+                }
+            }
+            Map.Entry<String, RememberedRedirect> e = redirectEvictionHand.next();
+            RememberedRedirect r = e.getValue();
+            if (r.used && r.expires > now) {
+                r.used = false;
+            } else {
+                redirectMemo.remove(e.getKey(), r);
+            }
+        }
+    }
+
+    /**
+     * Returns the URL that a request for {@code url} should be sent to, following the 
+     * chain of redirects remembered by {@link #rememberRedirect(String)}. 
+     * Implementations that follow redirects should call this method before connecting, 
+     * so that a permanently moved URL costs one round trip instead of two.
+     *
+     * <p>Remembered redirects apply only to {@code GET} and {@code HEAD} requests; for 
+     * any other method, {@code url} is returned unchanged. Expired entries are dropped 
+     * as they are found. The chain is followed for at most 20 redirects; a chain that 
+     * returns to a URL already visited is a redirect loop. When the resolved URL has a 
+     * different host from {@code url}, the implementation must check the permissions 
+     * for the new host, as it does when following a redirect from the network.</p>
+     *
+     * <p>Lookups do not take a lock, so resolving redirects before every request does 
+     * not serialize requests from different threads.</p>
+     *
+     * @param url the absolute URL being requested.
+     * @param method the request method, as returned by {@link #getRequestMethod()}.
+     * @return the URL to request, which is {@code url} itself if no redirect for it is 
+     *         remembered.
+     * @throws ProtocolException if the remembered redirects form a loop or a chain 
+     *         longer than 20.
+     * @throws NullPointerException if {@code url} is {@code null}.
+     *
+     * @see #rememberRedirect(String)
+     * @see #setInstanceFollowRedirects(boolean)
+     */
+    protected static String resolveRedirects(String url, String method) throws ProtocolException {
+        Objects.requireNonNull(url, "url");
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return url;
+        }
+        String current = url;
+        Set<String> visited = null;
+        for (int hops = 0; ; hops++) {
+            RememberedRedirect r = redirectMemo.get(current);
+            if (r == null) {
+                return current;
+            }
+            if (r.expires <= System.currentTimeMillis()) {
+                redirectMemo.remove(current, r);
+                return current;
+            }
+            if (!r.used) {
+                r.used = true;
+            }
+            if (visited == null) {
+                visited = new HashSet<>();
+            }
+            visited.add(current);
+            if (hops == MAX_REDIRECTS || visited.contains(r.target)) {
+                throw new ProtocolException("Server redirected too many times ("
+                        + MAX_REDIRECTS + ")");
+            }
+            current = r.target;
+        }
+    }
+
+    /**
+     * If {@code true}, a response body sent with {@code Content-Encoding: gzip} or 
+     * {@code deflate} is decoded transparently. If {@code false}, the body is returned 
+     * exactly as it was received.
+     * <p>
+     * This field is set by the {@code setContentDecoding} method. Its value is 
+     * returned by the {@code getContentDecoding} method. Its default value is 
+     * {@code true}.
+     *
+     * @see #setContentDecoding(boolean)
+     * @see #getContentDecoding()
+     */
+    protected boolean contentDecoding = true;
+
+    /**
+     * Configures whether this {@code HttpURLConnection} transparently decodes response 
+     * bodies sent with {@code Content-Encoding: gzip} or {@code deflate}.
+     *
+     * <p>When decoding is enabled (the default), the streams returned by 
+     * {@code getInputStream()} and {@link #getErrorStream()} deliver the decoded body. 
+     * Implementations reuse {@link java.util.zip.Inflater Inflater} instances across 
+     * responses, so decoding does not allocate native memory for every response. 
+     * When decoding is disabled, the encoded bytes are delivered unchanged, for 
+     * example for a proxy that forwards the body as received; the 
+     * {@code Content-Encoding} header field then still describes the body.</p>
+     *
+     * <p>This method must be called before the URLConnection is connected.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * httpConn.setRequestProperty("Accept-Encoding", "gzip");
+     * httpConn.setContentDecoding(false); // Forward the gzip bytes as they are
+     * InputStream raw = httpConn.getInputStream();
+     * }</pre>
+     *
+     * @param decode {@code true} to decode compressed response bodies, {@code false} 
+     *        to return them as received.
+     * @throws IllegalStateException if the URLConnection is already connected.
+     *
+     * @see #getContentDecoding()
+     * @see #decodeContent(InputStream, String)
+     */
+    public void setContentDecoding(boolean decode) {
+        if (connected) {
+            throw new IllegalStateException("Already connected");
+        }
+        contentDecoding = decode;
+    }
+
+    /**
+     * Returns the value of this {@code HttpURLConnection}'s {@code contentDecoding} 
+     * field, which indicates whether compressed response bodies are decoded 
+     * transparently.
+     *
+     * @return {@code true} if compressed response bodies are decoded, {@code false} 
+     *         if they are returned as received.
+     *
+     * @see #setContentDecoding(boolean)
+     */
+    public boolean getContentDecoding() {
+        return contentDecoding;
+    }
+
+    /**
+     * If {@code true}, the request may be pipelined: written on a keep-alive connection 
+     * that is still waiting for the responses to earlier requests. Only requests with a 
+     * {@linkplain RequestMethod#isSafe() safe} method are pipelined; for any other 
+     * method this field is ignored.
+     * <p>
+     * This field is set by the {@code setPipelining} method. Its value is returned by 
+     * the {@code getPipelining} method. Its default value is {@code false}.
+     *
+     * @see #setPipelining(boolean)
+     * @see #getPipelining()
+     */
+    protected boolean pipelining = false;
+
+    /**
+     * Configures whether this {@code HttpURLConnection} may send its request with 
+     * HTTP/1.1 pipelining, as described under <em>Connection Reuse</em> in the class 
+     * description.
+     *
+     * <p>Pipelining is off by default, because some servers and proxies mishandle it. 
+     * It only takes effect if the {@linkplain #getRequestMethod() request method} is 
+     * {@code GET}, {@code HEAD}, {@code OPTIONS} or {@code TRACE} when the connection 
+     * is made; requests with other methods are always sent on a connection with no 
+     * outstanding responses.</p>
+     *
+     * <p>This method must be called before the connection is made.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * for (URL url : urls) {
+     *     HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     *     httpConn.setPipelining(true); // GET requests to one server share a connection
+     *     pending.add(httpConn);
+     * }
+     * }</pre>
+     *
+     * @param pipelining {@code true} to allow the request to be pipelined.
+     * @throws IllegalStateException if the connection has already been made.
+     *
+     * @see #getPipelining()
+     */
+    public void setPipelining(boolean pipelining) {
+        if (connected) {
+            throw new IllegalStateException("Already connected");
+        }
+        this.pipelining = pipelining;
+    }
+
+    /**
+     * Returns the value of this {@code HttpURLConnection}'s {@code pipelining} field, 
+     * which indicates whether the request may be pipelined if its method is safe.
+     *
+     * @return {@code true} if pipelining is allowed, {@code false} otherwise.
+     *
+     * @see #setPipelining(boolean)
+     */
+    public boolean getPipelining() {
+        return pipelining;
+    }
+
+    /**
+     * Sets the HTTP request method to the specified method (eg. "GET", "POST", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE").
+     * The method must be set before the connection is established by calling {@link #connect()}, or a {@code ProtocolException} will be thrown.
+     * 
+     * <p>By default, the request method is "GET". This method cannot be called after writing to the output stream or receiving a response from the server.</p>
+     * 
+     *  <p><b>Allowed HTTP methods:</b></p>
+     * <ul>
+     *     <li>GET</li>
+     *     <li>POST</li>
+     *     <li>HEAD</li>
+     *     <li>OPTIONS</li>
+     *     <li>PUT</li>
+     *     <li>DELETE</li>
+     *     <li>TRACE</li>
+     * </ul>
+     * 
+     * <p><b>Usage Notes:</b></p>
+     * <ul>
+     *     <li>This method must be called before the connection is established using {@code connect()} or before writing to the request body (for methods like "POST").</li>
+     *     <li>This method is not thread-safe. If multiple threads access the same instance of {@code HttpURLConnection}, external synchronization is required.</li>
+     *     <li>Setting the method to "TRACE" requires a special security permission: {@code allowHttpTrace}.</li>
+     * </ul>
+     * 
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * URL url = new URL("https://example.com");
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
      * 
-     * int responseCode = connection.getResponseCode();
-     * if (responseCode == HttpURLConnection.HTTP_MOVED_TEMP) {
-     *     // Handle the redirection manually
-     *     String newLocation = connection.getHeaderField("Location");
-     *     System.out.println("Redirected to: " + newLocation);
-     * }
+     * // Set the request method to POST
+     * httpConn.setRequestMethod("POST");
+     * 
+     * // Send POST data
+     * httpConn.setDoOutput(true);
+     * OutputStream os = httpConn.getOutputStream();
+     * os.write("param1=value1&param2=value2".getBytes());
+     * os.flush();
+     * os.close();
+     * 
+     * // Read the response
+     * int responseCode = httpConn.getResponseCode();
+     * System.out.println("Response Code: " + responseCode);
+     * httpConn.disconnect();
      * }</pre>
      * 
-     * <p>This method changes the default redirection behavior for all connections. 
-     * For controlling redirects on a per-connection basis, use {@link #setInstanceFollowRedirects(boolean)}.</p>
+     * @param method the HTTP request method to be set (e.g., "GET", "POST").
      * 
-     * @param set a {@code boolean} specifying whether to follow HTTP redirects. Default is {@code true}.
-     * @throws SecurityException if a security manager exists and denies the operation via {@code checkSetFactory()}.
+     * @throws ProtocolException if the method cannot be reset after connecting, or if the requested method is invalid for HTTP.
+     * @throws IllegalArgumentException if the specified method is null.
+     * @throws SecurityException if a security manager is set and the method is "TRACE" but the "allowHttpTrace" {@code NetPermission} is not granted.
      * 
-     * @see SecurityManager#checkSetFactory()
-     * @see #getFollowRedirects()
-     * @see #setInstanceFollowRedirects(boolean)
+     * @see #getRequestMethod()
+     * @see #setRequestMethod(RequestMethod)
      */
-    public static void setFollowRedirects(boolean set) {
-        @SuppressWarnings("removal")
-        SecurityManager sec = System.getSecurityManager();
-        if (sec != null) {
-            // seems to be the best check here...
-            sec.checkSetFactory();
+    public void setRequestMethod(String method) throws ProtocolException {
+        if (method == null) {
+            throw new IllegalArgumentException("method is null");
         }
-        followRedirects = set;
+        if (connected) {
+            throw new ProtocolException("Can't reset method: already connected");
+        }
+        RequestMethod m = lookupMethod(method);
+        if (m == null) {
+            throw new ProtocolException("Invalid HTTP method: " + method);
+        }
+        setRequestMethod0(m);
     }
 
     /**
-     * Returns a {@code boolean} indicating whether HTTP redirects (3xx responses) 
-     * should be automatically followed by the current connection. If redirects 
-     * are followed, the client will automatically handle 3xx status codes 
-     * by making additional requests to the new location provided in the 
-     * response's "Location" header.
+     * Sets the HTTP request method to one of the {@link RequestMethod} constants. This 
+     * behaves like {@link #setRequestMethod(String)}, but as the method is already known 
+     * to be valid, no method name has to be checked.
      *
-     * <p>This is a global setting for all HTTP connections and affects 
-     * all instances of {@code HttpURLConnection}. The default value is 
-     * {@code true}, meaning redirects are automatically followed unless 
-     * explicitly disabled.
+     * <p>After this call, {@link #getRequestMethod()} returns the canonical 
+     * {@code String} instance {@code method.name()}.</p>
      *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
-     * boolean followRedirects = HttpURLConnection.getFollowRedirects();
-     * if (followRedirects) {
-     *     System.out.println("Redirects are automatically followed.");
-     * } else {
-     *     System.out.println("Redirects are not automatically followed.");
-     * }
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * httpConn.setRequestMethod(HttpURLConnection.RequestMethod.HEAD);
      * }</pre>
      *
-     * @return {@code true} if HTTP redirects are automatically followed, 
-     *         {@code false} if they are not.
+     * @param method the HTTP request method to be set.
      *
-     * @see java.net.HttpURLConnection#setFollowRedirects(boolean)
+     * @throws ProtocolException if the method cannot be reset after connecting.
+     * @throws NullPointerException if {@code method} is {@code null}.
+     * @throws SecurityException if a security manager is set and the method is 
+     *         {@code TRACE} but the "allowHttpTrace" {@code NetPermission} is not granted.
+     *
+     * @see #setRequestMethod(String)
+     * @see #getRequestMethod()
      */
-    public static boolean getFollowRedirects() {
-        return followRedirects;
+    public void setRequestMethod(RequestMethod method) throws ProtocolException {
+        Objects.requireNonNull(method, "method");
+        if (connected) {
+            throw new ProtocolException("Can't reset method: already connected");
+        }
+        setRequestMethod0(method);
     }
 
+    private void setRequestMethod0(RequestMethod m) {
+        if (m == RequestMethod.TRACE) {
+            @SuppressWarnings("removal")
+            SecurityManager s = System.getSecurityManager();
+            if (s != null) {
+                s.checkPermission(new NetPermission("allowHttpTrace"));
+            }
+        }
+        this.method = m.name();
+    }
 
     /**
-     * Configures whether HTTP redirects (requests with response code 3xx) should 
-     * be automatically followed by this {@code HttpURLConnection} instance.
-     * 
-     * <p>When set to {@code true}, this instance will automatically follow HTTP 
-     * redirects. When set to {@code false}, the instance will not follow redirects 
-     * and the client code must handle redirect responses manually. This setting 
-     * affects only the current {@code HttpURLConnection} instance and does not 
-     * alter the behavior of other instances or the default behavior of the class.</p>
-     * 
-     * <p><b>Behavior and Scope:</b></p>
+     * Returns the HTTP request method used by this {@code HttpURLConnection} instance. 
+     * Common methods include "GET", "POST", "PUT", "DELETE", etc.
+     *
+     * <p>When the method was set with {@link #setRequestMethod(String)} or 
+     * {@link #setRequestMethod(RequestMethod)}, the returned {@code String} is the 
+     * canonical instance {@link RequestMethod#name()}, whatever instance was passed in.
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * String requestMethod = httpConn.getRequestMethod();
+     * System.out.println("Request Method: " + requestMethod);
+     * }</pre>
+     *
+     * @return the HTTP request method as a {@code String}.
+     *
+     * @see java.net.HttpURLConnection#setRequestMethod(String)
+     */
+    public String getRequestMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the HTTP status code from the response message. For example, 
+     * for the following status lines:
      * <ul>
-     *   <li>This method's setting applies only to the current instance of 
-     *       {@code HttpURLConnection}. It does not affect other instances of 
-     *       {@code HttpURLConnection}, even if they are created from the same 
-     *       URL or use the same connection factory.</li>
-     *   <li>To affect redirect behavior globally, use the static method 
-     *       {@link #setFollowRedirects(boolean)}. This static method sets the 
-     *       default redirect-following behavior for all instances of 
-     *       {@code HttpURLConnection} created thereafter.</li>
-     *   <li>Changing this setting on an instance does not retroactively affect 
-     *       connections that were already established or other instances created 
-     *       prior to this change.</li>
+     *   <li>{@code HTTP/1.0 200 OK} returns {@code 200}</li>
+     *   <li>{@code HTTP/1.0 401 Unauthorized} returns {@code 401}</li>
      * </ul>
-     * 
+     * If the response is not valid HTTP, or no status code can be discerned, 
+     * this method returns {@code -1}.
+     *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
-     * HttpURLConnection connection = (HttpURLConnection) new URL("https://example.com").openConnection();
-     * connection.setInstanceFollowRedirects(false); // Disable automatic redirect following
-     * // Handle redirects manually if needed
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * try {
+     *     int responseCode = httpConn.getResponseCode();
+     *     System.out.println("Response Code: " + responseCode);
+     * } catch (IOException e) {
+     *     e.printStackTrace();  // Handle potential connection error
+     * }
      * }</pre>
-     * 
-     * <p><b>Important Notes:</b></p>
+     *
+     * <p><b>Note:</b> This method connects if necessary and blocks the calling thread 
+     * until the status line and headers have been received. An implementation is free 
+     * to perform the exchange itself on non-blocking channels driven by a small number 
+     * of event-loop threads, so that many exchanges are in flight without a thread each; 
+     * the calling thread then only waits for its own exchange to reach the headers. 
+     * Either way the observable behavior of this method, {@link #getHeaderField(int)} 
+     * and {@link #getErrorStream()} is the same.
+     *
+     * @return the HTTP status code, or {@code -1} if no valid status code is found.
+     * @throws IOException if an error occurs while connecting to the server.
+     *
+     * @see java.net.HttpURLConnection#getResponseMessage()
+     */
+    public int getResponseCode() throws IOException {
+        return -1;
+    }
+
+    /**
+     * Returns the HTTP response message returned by the server, which provides 
+     * a textual description of the status code. For example:
      * <ul>
-     *   <li>Ensure this method is called before establishing a connection to 
-     *       apply the desired redirect behavior.</li>
-     *   <li>For global redirect behavior settings affecting all instances, use 
-     *       {@link #setFollowRedirects(boolean)}.</li>
+     *   <li>{@code HTTP/1.0 200 OK} returns {@code "OK"}</li>
+     *   <li>{@code HTTP/1.0 404 Not Found} returns {@code "Not Found"}</li>
      * </ul>
+     * <p>
+     * This method should be called after establishing a connection and receiving 
+     * a response from the server. It is generally used in conjunction with 
+     * {@link #getResponseCode()} to interpret the server's response. The response 
+     * code provides the numerical status, while the response message provides 
+     * the textual description.
+     * </p>
+     * <p>
+     * If no valid response message can be determined (e.g., if the response is 
+     * not a valid HTTP response), this method returns {@code null}.
+     * </p>
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * try {
+     *     httpConn.connect(); // Ensure the connection is established
+     *     int responseCode = httpConn.getResponseCode();
+     *     String responseMessage = httpConn.getResponseMessage();
+     *     System.out.println("Response Code: " + responseCode);
+     *     System.out.println("Response Message: " + responseMessage);
+     * } catch (IOException e) {
+     *     e.printStackTrace();  // Handle potential connection error
+     * }
+     * }</pre>
      * 
-     * @param followRedirects a {@code boolean} indicating whether HTTP redirects should 
-     *        be automatically followed by this instance. {@code true} to follow redirects, 
-     *        {@code false} to handle them manually.
+     * @return the HTTP response message, or {@code null} if no valid message 
+     *         is found.
+     * @throws IOException if an error occurs while connecting to the server.
      * 
-     * @see #getInstanceFollowRedirects()
-     * @see #setFollowRedirects(boolean)
-     * @since 1.3
+     * @see #getResponseCode()
+     */
+    public String getResponseMessage() throws IOException {
+        getResponseCode();
+        return responseMessage;
+    }
+
+    /**
+     * Parses the status code from an HTTP status line held in {@code len} bytes of 
+     * {@code buf} starting at {@code off}, such as {@code HTTP/1.1 200 OK}. The line 
+     * must not include the terminating CRLF.
+     *
+     * <p>The code is read directly from the bytes, without creating a {@code String}. 
+     * Implementations should use this method to set {@link #responseCode}, together 
+     * with {@link #parseReasonPhrase(byte[], int, int)} for {@link #responseMessage}.</p>
+     *
+     * @param buf the buffer holding the status line.
+     * @param off the offset of the first byte of the status line.
+     * @param len the length of the status line in bytes.
+     * @return the three digit status code, or {@code -1} if the bytes are not a valid 
+     *         HTTP status line.
+     * @throws IndexOutOfBoundsException if {@code off} and {@code len} do not describe 
+     *         a region of {@code buf}.
+     *
+     * @see #getResponseCode()
+     */
+    protected static int parseStatusCode(byte[] buf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, buf.length);
+        int p = statusCodeOffset(buf, off, len);
+        if (p < 0) {
+            return -1;
+        }
+        return (buf[p] - '0') * 100 + (buf[p + 1] - '0') * 10 + (buf[p + 2] - '0');
+    }
+
+    /**
+     * Parses the reason phrase from an HTTP status line held in {@code len} bytes of 
+     * {@code buf} starting at {@code off}, such as the {@code OK} in 
+     * {@code HTTP/1.1 200 OK}. The line must not include the terminating CRLF.
+     *
+     * <p>If the phrase is the standard one for its status code, for example 
+     * {@code Not Modified} for {@link #HTTP_NOT_MODIFIED}, a shared {@code String} 
+     * instance is returned and nothing is allocated. Otherwise the phrase is decoded 
+     * as ISO-8859-1 into a new {@code String}.</p>
+     *
+     * @param buf the buffer holding the status line.
+     * @param off the offset of the first byte of the status line.
+     * @param len the length of the status line in bytes.
+     * @return the reason phrase, or {@code null} if the status line has none or the 
+     *         bytes are not a valid HTTP status line.
+     * @throws IndexOutOfBoundsException if {@code off} and {@code len} do not describe 
+     *         a region of {@code buf}.
+     *
+     * @see #getResponseMessage()
+     */
+    protected static String parseReasonPhrase(byte[] buf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, buf.length);
+        int p = statusCodeOffset(buf, off, len);
+        int start = p + 4;
+        int end = off + len;
+        if (p < 0 || start >= end) {
+            return null;
+        }
+        int code = parseStatusCode(buf, off, len);
+        String phrase = code < REASON_PHRASES.length ? REASON_PHRASES[code] : null;
+        if (phrase != null && phrase.length() == end - start) {
+            int i = 0;
+            while (i < phrase.length() && buf[start + i] == phrase.charAt(i)) {
+                i++;
+            }
+            if (i == phrase.length()) {
+                return phrase;
+            }
+        }
+        return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * Returns the offset of the status code in an "HTTP/x.y nnn[ reason]" line,
+     * or -1 if the line does not have that form.
+     */
+    private static int statusCodeOffset(byte[] buf, int off, int len) {
+        int end = off + len;
+        if (len < 12 || buf[off] != 'H' || buf[off + 1] != 'T' || buf[off + 2] != 'T'
+                || buf[off + 3] != 'P' || buf[off + 4] != '/') {
+            return -1;
+        }
+        int p = off + 5;
+        while (p < end && buf[p] != ' ') {
+            p++;
+        }
+        p++;
+        if (p + 3 > end || (p + 3 < end && buf[p + 3] != ' ')) {
+            return -1;
+        }
+        for (int i = p; i < p + 3; i++) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                return -1;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns the class of an HTTP status code, that is its first digit: {@code 1} for 
+     * informational, {@code 2} for success, {@code 3} for redirection, {@code 4} for 
+     * client error and {@code 5} for server error responses. This lets callers branch 
+     * on the kind of response without comparing against individual codes.
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * switch (HttpURLConnection.statusClass(httpConn.getResponseCode())) {
+     *     case 2 -> handleSuccess(httpConn.getInputStream());
+     *     case 4, 5 -> handleError(httpConn.getErrorStream());
+     *     default -> handleOther(httpConn);
+     * }
+     * }</pre>
+     *
+     * @param code an HTTP status code, as returned by {@link #getResponseCode()}.
+     * @return the status class, from {@code 1} to {@code 5}, or {@code -1} if 
+     *         {@code code} is not between 100 and 599.
+     *
+     * @see #getResponseCode()
+     */
+    public static int statusClass(int code) {
+        return code >= 100 && code <= 599 ? code / 100 : -1;
+    }
+
+    /**
+     * Returns the value of the specified header field parsed as a date. The result 
+     * is the number of milliseconds since January 1, 1970 GMT. If the field is 
+     * missing or cannot be parsed as a date, the provided {@code defaultValue} 
+     * is returned.
+     *
+     * <p>The three date formats allowed by HTTP/1.1 are recognized directly, without 
+     * going through a general-purpose date parser:</p>
+     * <ul>
+     *   <li>IMF-fixdate (RFC 1123): {@code Sun, 06 Nov 1994 08:49:37 GMT}</li>
+     *   <li>RFC 850: {@code Sunday, 06-Nov-94 08:49:37 GMT}</li>
+     *   <li>ANSI C {@code asctime()}: {@code Sun Nov  6 08:49:37 1994}</li>
+     * </ul>
+     * <p>Any other value is handed to {@link URLConnection#getHeaderFieldDate(String, long)}. 
+     * Recently parsed values are remembered in a small table indexed by the hash of 
+     * the value, so repeated lookups of the same {@code Date} value, as sent by a 
+     * server for all responses within one second, return the cached result, and 
+     * different fields read together, such as {@code Date} and {@code Expires}, do 
+     * not evict each other.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * long date = httpConn.getHeaderFieldDate("Last-Modified", System.currentTimeMillis());
+     * if (date != 0) {
+     *     System.out.println("Last-Modified: " + new Date(date));
+     * } else {
+     *     System.out.println("No valid Last-Modified header.");
+     * }
+     * }</pre>
+     *
+     * @param name the name of the header field.
+     * @param defaultValue the default value to return if the field is missing or 
+     *                malformed.
+     * @return the parsed date value in milliseconds since January 1, 1970 GMT, 
+     *         or the {@code defaultValue} if the field is missing or invalid.
+     *
+     * @see java.net.URLConnection#getHeaderFieldDate(String, long)
+     * @see #formatHttpDate(long)
+     */
+    public long getHeaderFieldDate(String name, long defaultValue) {
+        String value = getHeaderField(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int slot = value.hashCode() & (PARSED_DATES.length - 1);
+        HttpDate last = PARSED_DATES[slot];
+        if (last != null && last.text.equals(value)) {
+            return last.millis;
+        }
+        long millis = parseHttpDate(value);
+        if (millis == Long.MIN_VALUE) {
+            return super.getHeaderFieldDate(name, defaultValue);
+        }
+        PARSED_DATES[slot] = new HttpDate(value, millis);
+        return millis;
+    }
+
+    /**
+     * Formats a date as an HTTP/1.1 IMF-fixdate, such as 
+     * {@code Sun, 06 Nov 1994 08:49:37 GMT}. This is the format to use for request 
+     * headers such as {@code If-Modified-Since}, and the one recognized first by 
+     * {@link #getHeaderFieldDate(String, long)}.
+     *
+     * <p>The date is truncated to whole seconds. The most recently formatted second is 
+     * remembered, so formatting several dates within the same second returns the same 
+     * {@code String} instance.</p>
+     *
+     * @param millis the date in milliseconds since January 1, 1970 GMT.
+     * @return the date in IMF-fixdate format.
+     * @throws IllegalArgumentException if the date is not within the years 1 to 9999.
+     *
+     * @see #getHeaderFieldDate(String, long)
      */
-    public void setInstanceFollowRedirects(boolean followRedirects) {
-        instanceFollowRedirects = followRedirects;
+    protected static String formatHttpDate(long millis) {
+        long seconds = Math.floorDiv(millis, 1000L);
+        HttpDate last = lastFormattedDate;
+        if (last != null && last.millis == seconds) {
+            return last.text;
+        }
+        long days = Math.floorDiv(seconds, 86400L);
+        int secs = (int) Math.floorMod(seconds, 86400L);
+
+        // civil date from days since 1970-01-01
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097L);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 1 || year > 9999) {
+            throw new IllegalArgumentException("Date out of range: " + millis);
+        }
+
+        char[] buf = new char[29];
+        int wd = (int) Math.floorMod(days, 7L) * 3;
+        WEEKDAYS.getChars(wd, wd + 3, buf, 0);
+        buf[3] = ',';
+        buf[4] = ' ';
+        putDigits(buf, 5, day, 2);
+        buf[7] = ' ';
+        MONTHS.getChars((month - 1) * 3, month * 3, buf, 8);
+        buf[11] = ' ';
+        putDigits(buf, 12, (int) year, 4);
+        buf[16] = ' ';
+        putDigits(buf, 17, secs / 3600, 2);
+        buf[19] = ':';
+        putDigits(buf, 20, secs / 60 % 60, 2);
+        buf[22] = ':';
+        putDigits(buf, 23, secs % 60, 2);
+        " GMT".getChars(0, 4, buf, 25);
+        String text = new String(buf);
+        lastFormattedDate = new HttpDate(text, seconds);
+        return text;
     }
 
     /**
-     * Returns the value of this {@code HttpURLConnection}'s {@code instanceFollowRedirects} field, 
-     * which indicates whether this specific connection instance will automatically follow HTTP redirects 
-     * (3xx responses). This setting affects only this instance, not the global setting.
+     * Returns how long the response may be served from a cache without revalidation, 
+     * as given by its {@code Cache-Control} and {@code Expires} header fields.
      *
-     * <p>By default, the value is inherited from the global setting. You can control it for this instance 
-     * using {@link #setInstanceFollowRedirects(boolean)}.
+     * <p>A {@code no-store} or {@code no-cache} directive gives a lifetime of zero. 
+     * Otherwise a {@code max-age} directive takes precedence, and failing that the 
+     * difference between the {@code Expires} and {@code Date} dates is used, both read 
+     * with {@link #getHeaderFieldDate(String, long)}. An {@code Expires} value that 
+     * cannot be parsed means the response is already stale. Implementations that store 
+     * responses, for example through {@link ResponseCache}, use this lifetime to decide 
+     * whether a stored response can be returned as it is or must be revalidated with 
+     * {@link #setConditionalHeaders(String, long)}.</p>
      *
-     * <p><b>Usage Example:</b></p>
-     * <pre>{@code
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * boolean followRedirects = httpConn.getInstanceFollowRedirects();
-     * System.out.println("Instance follows redirects: " + followRedirects);
-     * }</pre>
+     * @return the freshness lifetime in milliseconds, or {@code -1} if the response 
+     *         does not specify one.
      *
-     * @return {@code true} if this instance will follow redirects automatically, 
-     *         {@code false} otherwise.
+     * @see #setConditionalHeaders(String, long)
+     */
+    protected long getFreshnessLifetime() {
+        String cacheControl = getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            long maxAge = -1;
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim();
+                if (directive.equalsIgnoreCase("no-store")
+                        || directive.equalsIgnoreCase("no-cache")) {
+                    return 0;
+                }
+                if (directive.regionMatches(true, 0, "max-age=", 0, 8)) {
+                    String seconds = directive.substring(8).replace("\"", "");
+                    try {
+                        maxAge = Long.parseLong(seconds);
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+            if (maxAge >= 0) {
+                return maxAge > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : maxAge * 1000;
+            }
+        }
+        if (getHeaderField("Expires") == null) {
+            return -1;
+        }
+        long expires = getHeaderFieldDate("Expires", Long.MIN_VALUE);
+        if (expires == Long.MIN_VALUE) {
+            return 0;
+        }
+        long date = getHeaderFieldDate("Date", System.currentTimeMillis());
+        return Math.max(0, expires - date);
+    }
+
+    /**
+     * Makes this request conditional on a stored response having changed, by setting 
+     * the {@code If-None-Match} and {@code If-Modified-Since} request properties. If the 
+     * stored response is still current, the server answers with 
+     * {@link #HTTP_NOT_MODIFIED} and no body, and the stored body can be used.
      *
-     * @since 1.3
-     * @see java.net.HttpURLConnection#instanceFollowRedirects
-     * @see java.net.HttpURLConnection#setInstanceFollowRedirects(boolean)
+     * <p>This method must be called before connecting.</p>
+     *
+     * @param etag the {@code ETag} of the stored response, or {@code null} if it has 
+     *        none.
+     * @param lastModified the {@code Last-Modified} date of the stored response in 
+     *        milliseconds since January 1, 1970 GMT, or {@code 0} if it has none.
+     * @throws IllegalStateException if already connected.
+     *
+     * @see #getFreshnessLifetime()
+     * @see #formatHttpDate(long)
      */
-    public boolean getInstanceFollowRedirects() {
-        return instanceFollowRedirects;
+    protected void setConditionalHeaders(String etag, long lastModified) {
+        if (etag != null) {
+            setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified > 0) {
+            setRequestProperty("If-Modified-Since", formatHttpDate(lastModified));
+        }
     }
 
     /**
-     * Sets the HTTP request method to the specified method (eg. "GET", "POST", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE").
-     * The method must be set before the connection is established by calling {@link #connect()}, or a {@code ProtocolException} will be thrown.
-     * 
-     * <p>By default, the request method is "GET". This method cannot be called after writing to the output stream or receiving a response from the server.</p>
-     * 
-     *  <p><b>Allowed HTTP methods:</b></p>
-     * <ul>
-     *     <li>GET</li>
-     *     <li>POST</li>
-     *     <li>HEAD</li>
-     *     <li>OPTIONS</li>
-     *     <li>PUT</li>
-     *     <li>DELETE</li>
-     *     <li>TRACE</li>
-     * </ul>
-     * 
-     * <p><b>Usage Notes:</b></p>
-     * <ul>
-     *     <li>This method must be called before the connection is established using {@code connect()} or before writing to the request body (for methods like "POST").</li>
-     *     <li>This method is not thread-safe. If multiple threads access the same instance of {@code HttpURLConnection}, external synchronization is required.</li>
-     *     <li>Setting the method to "TRACE" requires a special security permission: {@code allowHttpTrace}.</li>
-     * </ul>
-     * 
-     * <p><b>Usage Example:</b></p>
-     * <pre>{@code
-     * URL url = new URL("https://example.com");
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * 
-     * // Set the request method to POST
-     * httpConn.setRequestMethod("POST");
-     * 
-     * // Send POST data
-     * httpConn.setDoOutput(true);
-     * OutputStream os = httpConn.getOutputStream();
-     * os.write("param1=value1&param2=value2".getBytes());
-     * os.flush();
-     * os.close();
-     * 
-     * // Read the response
-     * int responseCode = httpConn.getResponseCode();
-     * System.out.println("Response Code: " + responseCode);
-     * httpConn.disconnect();
-     * }</pre>
-     * 
-     * @param method the HTTP request method to be set (e.g., "GET", "POST").
-     * 
-     * @throws ProtocolException if the method cannot be reset after connecting, or if the requested method is invalid for HTTP.
-     * @throws IllegalArgumentException if the specified method is null.
-     * @throws SecurityException if a security manager is set and the method is "TRACE" but the "allowHttpTrace" {@code NetPermission} is not granted.
-     * 
-     * @see #getRequestMethod()
+     * {@inheritDoc}
+     *
+     * <p>The properties set are remembered, because they cannot be read once the 
+     * connection is connected but a {@link ResponseCache} needs them afterwards: to 
+     * tell whether the request carried {@code Authorization}, and which values it sent 
+     * for the fields named by a {@code Vary} response field.</p>
      */
-    public void setRequestMethod(String method) throws ProtocolException {
+    @Override
+    public void setRequestProperty(String key, String value) {
+        super.setRequestProperty(key, value);
+        List<String> values = new ArrayList<>(1);
+        values.add(value);
+        requestFields().put(key, values);
     }
 
     /**
-     * Returns the HTTP request method used by this {@code HttpURLConnection} instance. 
-     * Common methods include "GET", "POST", "PUT", "DELETE", etc.
+     * {@inheritDoc}
+     *
+     * <p>The properties added are remembered, as for 
+     * {@link #setRequestProperty(String, String)}.</p>
+     */
+    @Override
+    public void addRequestProperty(String key, String value) {
+        super.addRequestProperty(key, value);
+        requestFields().computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+    }
+
+    /* copy of the request properties set, readable after connecting; null until one is set */
+    private Map<String, List<String>> requestFields;
+
+    private Map<String, List<String>> requestFields() {
+        if (requestFields == null) {
+            requestFields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        }
+        return requestFields;
+    }
+
+    /* the last value set for a request property, or null */
+    private String requestField(String name) {
+        List<String> values = requestFields == null ? null : requestFields.get(name);
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    /**
+     * An in-memory {@link ResponseCache} bounded by bytes, with the W-TinyLFU admission 
+     * and eviction policy. It can be installed on its own, or as the in-memory tier in 
+     * front of a larger cache as described under <em>Response Caching</em> in the class 
+     * description.
+     *
+     * <p>Successful ({@link #HTTP_OK}) responses to {@code GET} requests are stored 
+     * for their {@linkplain #getFreshnessLifetime() freshness lifetime}, less any 
+     * {@code Age} they arrived with. A response is not stored if it has no positive 
+     * freshness lifetime, if its {@code Cache-Control} field includes {@code no-store}, 
+     * {@code no-cache}, {@code private} or {@code must-revalidate}, if it has a 
+     * {@code Vary} field or a body larger than a quarter of the cache, or if its request 
+     * carried an {@code Authorization} field. This cache never revalidates, so a stored 
+     * response stops being returned once it becomes stale, and is removed when it is 
+     * next requested. Each entry weighs the size of its body plus 
+     * its header fields. The cache is split into a small window, 1% of the bytes, 
+     * managed as an LRU list, and a main area managed as a segmented LRU with a 
+     * probationary and a protected segment. New entries enter the window. An entry 
+     * pushed out of the window is admitted to the main area only if it has been 
+     * requested more often than the entries it would evict, according to a compact 
+     * count-min sketch of recent request frequencies that is halved periodically so 
+     * that old popularity fades. Requests that miss are counted too, so a one-off scan 
+     * over many URLs never displaces entries that are requested repeatedly.</p>
+     *
+     * <p>Lookups do not block: entries are found in a concurrent map, and the access is 
+     * recorded in the policy only if its lock is free at that moment. Insertions take 
+     * the lock. A {@code MemoryResponseCache} is thread-safe.</p>
      *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * String requestMethod = httpConn.getRequestMethod();
-     * System.out.println("Request Method: " + requestMethod);
+     * MemoryResponseCache cache = new HttpURLConnection.MemoryResponseCache(64 * 1024 * 1024);
+     * ResponseCache.setDefault(cache);
+     * // ...
+     * System.out.println("Hit rate: " + (double) cache.hitCount()
+     *         / (cache.hitCount() + cache.missCount()));
      * }</pre>
      *
-     * @return the HTTP request method as a {@code String}.
-     *
-     * @see java.net.HttpURLConnection#setRequestMethod(String)
+     * @see #getFreshnessLifetime()
      */
-    public String getRequestMethod() {
-        return method;
+    public static final class MemoryResponseCache extends ResponseCache {
+        /* regions of the cache an entry can be in */
+        private static final int WINDOW = 0;
+        private static final int PROBATION = 1;
+        private static final int PROTECTED = 2;
+
+        private final long maxEntryBytes;
+        private final long windowMax;
+        private final long mainMax;
+        private final long protectedMax;
+        private final ConcurrentHashMap<String, Node> entries = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Region[] regions = { new Region(), new Region(), new Region() };
+        private final FrequencySketch sketch;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        /* directives of a response's Cache-Control field that keep it out of this cache */
+        private static final String[] REFUSED_DIRECTIVES = {
+            "no-store", "no-cache", "private", "must-revalidate"
+        };
+
+        /* about 35 years */
+        private static final long MAX_LIFETIME_MILLIS = 1L << 40;
+
+        /**
+         * Creates a cache that holds at most the given number of bytes.
+         *
+         * @param maxBytes the most bytes of bodies and header fields to keep.
+         * @throws IllegalArgumentException if {@code maxBytes} is not positive.
+         */
+        public MemoryResponseCache(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes <= 0");
+            }
+            maxEntryBytes = maxBytes / 4;
+            windowMax = Math.max(1, maxBytes / 100);
+            mainMax = maxBytes - windowMax;
+            protectedMax = mainMax / 5 * 4;
+            // size the sketch for entries of about 4 KB on average
+            sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(64, maxBytes / 4096)));
+        }
+
+        @Override
+        public CacheResponse get(URI uri, String rqstMethod, Map<String, List<String>> rqstHeaders) {
+            if (!"GET".equals(rqstMethod)) {
+                return null;
+            }
+            String key = uri.toString();
+            Node node = entries.get(key);
+            boolean stale = node != null && System.nanoTime() - node.expires >= 0;
+            if (lock.tryLock()) {
+                try {
+                    sketch.increment(key);
+                    if (node != null && entries.get(key) == node) {
+                        if (stale) {
+                            regions[node.region].remove(node);
+                            entries.remove(key, node);
+                        } else {
+                            onHit(node);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (node == null || stale) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return new CacheResponse() {
+                @Override
+                public Map<String, List<String>> getHeaders() {
+                    return node.headers;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(node.body);
+                }
+            };
+        }
+
+        @Override
+        public CacheRequest put(URI uri, URLConnection conn) throws IOException {
+            if (!(conn instanceof HttpURLConnection)) {
+                return null;
+            }
+            HttpURLConnection http = (HttpURLConnection) conn;
+            if (!"GET".equals(http.getRequestMethod())
+                    || http.requestField("Authorization") != null
+                    || http.getResponseCode() != HTTP_OK
+                    || http.getHeaderField("Vary") != null
+                    || forbidsStoring(http.getHeaderField("Cache-Control"))
+                    || http.getContentLengthLong() > maxEntryBytes) {
+                return null;
+            }
+            long lifetime = http.getFreshnessLifetime();
+            long age = http.getHeaderFieldLong("Age", 0);
+            if (age > 0) {
+                lifetime = age > lifetime / 1000 ? 0 : lifetime - age * 1000;
+            }
+            if (lifetime <= 0) {
+                return null;
+            }
+            // capped so that the nanoTime() deadline cannot wrap around
+            long expires = System.nanoTime() + Math.min(lifetime, MAX_LIFETIME_MILLIS) * 1_000_000;
+            Map<String, List<String>> headers = new HashMap<>();
+            long headerBytes = 0;
+            for (Map.Entry<String, List<String>> e : http.getHeaderFields().entrySet()) {
+                headers.put(e.getKey(), List.copyOf(e.getValue()));
+                headerBytes += e.getKey() == null ? 0 : e.getKey().length();
+                for (String v : e.getValue()) {
+                    headerBytes += v.length() + 4;
+                }
+            }
+            return new Request(uri.toString(), Collections.unmodifiableMap(headers), headerBytes,
+                               expires);
+        }
+
+        /* whether a Cache-Control value has a directive that keeps a response out of this cache */
+        private static boolean forbidsStoring(String cacheControl) {
+            if (cacheControl == null) {
+                return false;
+            }
+            for (String directive : cacheControl.split(",")) {
+                int eq = directive.indexOf('=');
+                String name = (eq < 0 ? directive : directive.substring(0, eq)).trim();
+                for (String refused : REFUSED_DIRECTIVES) {
+                    if (refused.equalsIgnoreCase(name)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the number of lookups that found an entry.
+         *
+         * @return the number of hits.
+         */
+        public long hitCount() {
+            return hits.sum();
+        }
+
+        /**
+         * Returns the number of {@code GET} lookups that found no entry.
+         *
+         * @return the number of misses.
+         */
+        public long missCount() {
+            return misses.sum();
+        }
+
+        /**
+         * Returns the total weight of the entries in the cache, in bytes.
+         *
+         * @return the weighted size of the cache.
+         */
+        public long weightedSize() {
+            lock.lock();
+            try {
+                return regions[WINDOW].bytes + regions[PROBATION].bytes + regions[PROTECTED].bytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* called with the lock held */
+        private void onHit(Node node) {
+            if (node.region == PROBATION) {
+                regions[PROBATION].remove(node);
+                node.region = PROTECTED;
+                regions[PROTECTED].addLast(node);
+                while (regions[PROTECTED].bytes > protectedMax) {
+                    Node demoted = regions[PROTECTED].first();
+                    regions[PROTECTED].remove(demoted);
+                    demoted.region = PROBATION;
+                    regions[PROBATION].addLast(demoted);
+                }
+            } else {
+                regions[node.region].remove(node);
+                regions[node.region].addLast(node);
+            }
+        }
+
+        private void add(Node node) {
+            lock.lock();
+            try {
+                Node old = entries.put(node.key, node);
+                if (old != null) {
+                    regions[old.region].remove(old);
+                }
+                node.region = WINDOW;
+                regions[WINDOW].addLast(node);
+                while (regions[WINDOW].bytes > windowMax) {
+                    Node candidate = regions[WINDOW].first();
+                    regions[WINDOW].remove(candidate);
+                    admit(candidate);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* moves an entry leaving the window into the main area, or drops it */
+        private void admit(Node candidate) {
+            while (regions[PROBATION].bytes + regions[PROTECTED].bytes + candidate.weight > mainMax) {
+                Node victim = regions[PROBATION].first();
+                if (victim == null) {
+                    victim = regions[PROTECTED].first();
+                }
+                if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    regions[victim.region].remove(victim);
+                    entries.remove(victim.key, victim);
+                } else {
+                    entries.remove(candidate.key, candidate);
+                    return;
+                }
+            }
+            candidate.region = PROBATION;
+            regions[PROBATION].addLast(candidate);
+        }
+
+        private static final class Node {
+            final String key;
+            final Map<String, List<String>> headers;
+            final byte[] body;
+            final long weight;
+            /* System.nanoTime() at which the entry becomes stale */
+            final long expires;
+            int region;
+            Node prev;
+            Node next;
+
+            Node(String key, Map<String, List<String>> headers, byte[] body, long weight,
+                 long expires) {
+                this.key = key;
+                this.headers = headers;
+                this.body = body;
+                this.weight = weight;
+                this.expires = expires;
+            }
+        }
+
+        /* An LRU list of entries, least recently used first, and its total weight */
+        private static final class Region {
+            private final Node head = new Node(null, null, null, 0, 0);
+            long bytes;
+
+            Region() {
+                head.prev = head;
+                head.next = head;
+            }
+
+            Node first() {
+                return head.next == head ? null : head.next;
+            }
+
+            void addLast(Node node) {
+                node.prev = head.prev;
+                node.next = head;
+                head.prev.next = node;
+                head.prev = node;
+                bytes += node.weight;
+            }
+
+            void remove(Node node) {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+                node.prev = null;
+                node.next = null;
+                bytes -= node.weight;
+            }
+        }
+
+        /*
+         * A count-min sketch of 4-bit counters in four rows. Once the number of increments
+         * reaches ten times the width, all counters are halved, so that frequencies reflect
+         * recent requests.
+         */
+        private static final class FrequencySketch {
+            private static final long[] SEEDS = {
+                0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+            };
+
+            private final byte[] counters;
+            private final int bits;
+            private final int resetAt;
+            private int additions;
+
+            FrequencySketch(int width) {
+                bits = 32 - Integer.numberOfLeadingZeros(width - 1);
+                counters = new byte[SEEDS.length << bits];
+                resetAt = 10 << bits;
+            }
+
+            void increment(String key) {
+                long h = key.hashCode();
+                for (int row = 0; row < SEEDS.length; row++) {
+                    int i = index(h, row);
+                    if (counters[i] < 15) {
+                        counters[i]++;
+                    }
+                }
+                if (++additions >= resetAt) {
+                    for (int i = 0; i < counters.length; i++) {
+                        counters[i] >>= 1;
+                    }
+                    additions >>= 1;
+                }
+            }
+
+            int frequency(String key) {
+                long h = key.hashCode();
+                int min = 15;
+                for (int row = 0; row < SEEDS.length; row++) {
+                    min = Math.min(min, counters[index(h, row)]);
+                }
+                return min;
+            }
+
+            private int index(long h, int row) {
+                return (row << bits) + (int) ((h * SEEDS[row]) >>> (64 - bits));
+            }
+        }
+
+        /* Collects a response body as it is read, and adds it to the cache on close */
+        private final class Request extends CacheRequest {
+            private final String key;
+            private final Map<String, List<String>> headers;
+            private final long headerBytes;
+            private final long expires;
+            private final ByteArrayOutputStream body = new java.io.ByteArrayOutputStream();
+            private boolean aborted;
+
+            Request(String key, Map<String, List<String>> headers, long headerBytes,
+                    long expires) {
+                this.key = key;
+                this.headers = headers;
+                this.headerBytes = headerBytes;
+                this.expires = expires;
+            }
+
+            @Override
+            public OutputStream getBody() {
+                return new OutputStream() {
+                    private boolean closed;
+
+                    @Override
+                    public void write(int b) {
+                        write(new byte[] { (byte) b }, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        if (aborted) {
+                            return;
+                        }
+                        if (body.size() + (long) len + headerBytes > maxEntryBytes) {
+                            abort();
+                            return;
+                        }
+                        body.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() {
+                        if (!closed && !aborted) {
+                            closed = true;
+                            byte[] bytes = body.toByteArray();
+                            add(new Node(key, headers, bytes, bytes.length + headerBytes, expires));
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void abort() {
+                aborted = true;
+                body.reset();
+            }
+        }
     }
 
     /**
-     * Returns the HTTP status code from the response message. For example, 
-     * for the following status lines:
-     * <ul>
-     *   <li>{@code HTTP/1.0 200 OK} returns {@code 200}</li>
-     *   <li>{@code HTTP/1.0 401 Unauthorized} returns {@code 401}</li>
-     * </ul>
-     * If the response is not valid HTTP, or no status code can be discerned, 
-     * this method returns {@code -1}.
+     * A persistent {@link ResponseCache} that keeps responses in a directory, for the 
+     * on-disk tier described under <em>Response Caching</em> in the class description.
+     *
+     * <p>Responses are appended to segment files of bounded size. Each record holds the 
+     * cache key, the header fields and the body. An index file, mapped into memory with 
+     * {@link FileChannel#map FileChannel.map}, is an open-addressing hash table from the 
+     * 64-bit hash of a key to the segment and offset of the key's latest record and the 
+     * time at which it becomes stale. The key is the URI, or, for a response with a 
+     * {@code Vary} field, the URI together with the values of the request fields that 
+     * {@code Vary} names; the plain URI then leads to the latest variant, whose 
+     * {@code Vary} field tells which request fields to look at. When the segments grow 
+     * beyond the size given to the constructor, the oldest segment is deleted together 
+     * with the entries in it. The index and the segments survive a restart, but are not 
+     * forced to the storage device on every update, so a crash of the operating system 
+     * may lose recent entries.</p>
+     *
+     * <p>Successful ({@link #HTTP_OK}) responses to {@code GET} requests are stored, 
+     * unless their {@code Cache-Control} field includes {@code no-store} or 
+     * {@code private}, their {@code Vary} field is {@code *}, or their request carried an 
+     * {@code Authorization} field. A response is fresh for its 
+     * {@linkplain #getFreshnessLifetime() freshness lifetime} less any {@code Age}, and a 
+     * response without a positive lifetime is only stored if it has an {@code ETag} or 
+     * {@code Last-Modified} field to revalidate it with. {@link #get get} returns fresh 
+     * entries only. Implementations revalidate through {@link #lookup lookup}, which 
+     * returns stale entries too: they send the entry's validators with 
+     * {@link #setConditionalHeaders(String, long)}, and on a {@link #HTTP_NOT_MODIFIED} 
+     * answer call {@link #revalidated revalidated} and serve the stored body, which 
+     * {@link Entry#transferBodyTo(WritableByteChannel)} sends from the segment file 
+     * without copying it through the Java heap.</p>
+     *
+     * <p>A {@code DiskResponseCache} is thread-safe. A directory must not be used by two 
+     * caches at the same time. Reading an entry whose segment is deleted meanwhile fails 
+     * with an {@code IOException}.</p>
      *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * try {
-     *     int responseCode = httpConn.getResponseCode();
-     *     System.out.println("Response Code: " + responseCode);
-     * } catch (IOException e) {
-     *     e.printStackTrace();  // Handle potential connection error
+     * // in an implementation, before connecting
+     * DiskResponseCache.Entry entry = cache.lookup(uri, requestFields);
+     * if (entry != null && entry.isFresh()) {
+     *     return entry;                      // served without a request
+     * }
+     * if (entry != null) {
+     *     setConditionalHeaders(entry.getETag(), entry.getLastModified());
+     * }
+     * // ... after reading the status line
+     * if (entry != null && responseCode == HTTP_NOT_MODIFIED) {
+     *     entry = cache.revalidated(entry, this);
+     *     entry.transferBodyTo(clientChannel);
      * }
      * }</pre>
      *
-     * @return the HTTP status code, or {@code -1} if no valid status code is found.
-     * @throws IOException if an error occurs while connecting to the server.
+     * @see MemoryResponseCache
+     * @see #setConditionalHeaders(String, long)
+     */
+    public static final class DiskResponseCache extends ResponseCache implements Closeable {
+        private static final int INDEX_MAGIC = 0x48434958;      // "HCIX"
+        private static final int RECORD_MAGIC = 0x48435243;     // "HCRC"
+        private static final int VERSION = 1;
+        /* index header: magic, version, number of slots, unused */
+        private static final int INDEX_HEADER = 16;
+        /* index slot: key hash, segment, unused, record offset, expiry in epoch millis */
+        private static final int SLOT = 32;
+        private static final long EMPTY = 0;
+        private static final long DELETED = 1;
+        private static final int MIN_SLOTS = 1024;
+        /* record header: magic, key length, header length, body length, lifetime */
+        private static final int RECORD_HEADER = 28;
+        /* about 35 years */
+        private static final long MAX_LIFETIME_MILLIS = 1L << 40;
+
+        private final Path directory;
+        private final long maxBytes;
+        private final long segmentBytes;
+        private final ReentrantLock lock = new ReentrantLock();
+        /* open segment files by number; the last one is appended to */
+        private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private MappedByteBuffer index;
+        private int slots;
+        /* slots holding a live or deleted entry */
+        private int used;
+        private long totalBytes;
+        private boolean closed;
+
+        /**
+         * Opens the cache kept in the given directory, creating the directory if it 
+         * does not exist. Entries stored by an earlier cache in the same directory are 
+         * kept; if the index cannot be read, the directory is emptied.
+         *
+         * @param directory the directory holding the index and the segment files.
+         * @param maxBytes the most bytes of segment files to keep.
+         * @throws IllegalArgumentException if {@code maxBytes} is not positive.
+         * @throws IOException if the directory cannot be created or read.
+         */
+        public DiskResponseCache(Path directory, long maxBytes) throws IOException {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes <= 0");
+            }
+            this.directory = Files.createDirectories(directory);
+            this.maxBytes = maxBytes;
+            segmentBytes = Math.max(64 * 1024, Math.min(64L << 20, maxBytes / 8));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        Files.delete(file);
+                    } else if (name.matches("[0-9]{8}\\.seg")) {
+                        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ,
+                                                          StandardOpenOption.WRITE);
+                        segments.put(Integer.parseInt(name.substring(0, 8)), ch);
+                        totalBytes += ch.size();
+                    }
+                }
+            }
+            if (!openIndex()) {
+                for (FileChannel ch : segments.values()) {
+                    ch.close();
+                }
+                for (int segment : segments.keySet()) {
+                    Files.delete(segmentFile(segment));
+                }
+                segments.clear();
+                totalBytes = 0;
+                slots = MIN_SLOTS;
+                used = 0;
+                index = mapIndex(directory.resolve("index"), slots);
+            }
+            if (segments.isEmpty()) {
+                newSegment();
+            }
+        }
+
+        /**
+         * Returns the stored response for {@code uri} if it is still fresh.
+         *
+         * @return the entry, or {@code null} if there is no fresh entry.
+         * @throws IOException if the entry cannot be read.
+         */
+        @Override
+        public CacheResponse get(URI uri, String rqstMethod, Map<String, List<String>> rqstHeaders)
+                throws IOException {
+            if (!"GET".equals(rqstMethod)) {
+                return null;
+            }
+            Entry entry = lookup(uri, rqstHeaders);
+            if (entry == null || !entry.isFresh()) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry;
+        }
+
+        /**
+         * Returns the stored response for {@code uri} whether or not it is fresh, so 
+         * that a stale one can be revalidated.
+         *
+         * @param uri the URI of the request.
+         * @param rqstHeaders the request header fields, used to select the variant of 
+         *        a response stored with a {@code Vary} field; names are compared 
+         *        ignoring case.
+         * @return the entry, or {@code null} if there is none.
+         * @throws IOException if the entry cannot be read.
+         */
+        public Entry lookup(URI uri, Map<String, List<String>> rqstHeaders) throws IOException {
+            String base = uri.toString();
+            Entry entry = read(base);
+            if (entry == null || entry.key.equals(base)) {
+                return entry;
+            }
+            if (!entry.key.startsWith(base + "\n")) {
+                return null;
+            }
+            String key = variantKey(base, field(entry.headers, "Vary"), rqstHeaders);
+            entry = read(key);
+            return entry != null && entry.key.equals(key) ? entry : null;
+        }
+
+        /**
+         * Marks a stale entry as fresh again after the server answered a conditional 
+         * request for it with {@link #HTTP_NOT_MODIFIED}. The new freshness lifetime is 
+         * taken from the {@code 304} response if it gives one, and is otherwise the 
+         * lifetime the entry was stored with. Only the expiry in the index is updated; 
+         * the stored header fields and body are not rewritten.
+         *
+         * @param entry the entry that was revalidated.
+         * @param notModified the connection that received the {@code 304} response.
+         * @return the entry with its new expiry.
+         * @throws IllegalArgumentException if the response code of 
+         *         {@code notModified} is not {@link #HTTP_NOT_MODIFIED}.
+         * @throws IOException if the response code cannot be read.
+         */
+        public Entry revalidated(Entry entry, HttpURLConnection notModified) throws IOException {
+            if (notModified.getResponseCode() != HTTP_NOT_MODIFIED) {
+                throw new IllegalArgumentException("Not a 304 response: "
+                        + notModified.getResponseCode());
+            }
+            long lifetime = currentLifetime(notModified);
+            if (lifetime < 0) {
+                lifetime = entry.lifetime;
+            }
+            long expires = System.currentTimeMillis() + Math.min(lifetime, MAX_LIFETIME_MILLIS);
+            lock.lock();
+            try {
+                int i = find(hash(entry.key));
+                if (!closed && i >= 0 && index.getInt(slotAt(i) + 8) == entry.segment
+                        && index.getLong(slotAt(i) + 16) == entry.offset) {
+                    index.putLong(slotAt(i) + 24, expires);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return new Entry(entry, expires);
+        }
+
+        @Override
+        public CacheRequest put(URI uri, URLConnection conn) throws IOException {
+            if (!(conn instanceof HttpURLConnection)) {
+                return null;
+            }
+            HttpURLConnection http = (HttpURLConnection) conn;
+            String vary = http.getHeaderField("Vary");
+            if (!"GET".equals(http.getRequestMethod())
+                    || http.requestField("Authorization") != null
+                    || http.getResponseCode() != HTTP_OK
+                    || (vary != null && vary.trim().equals("*"))
+                    || hasDirective(http.getHeaderField("Cache-Control"), "no-store", "private")) {
+                return null;
+            }
+            long lifetime = Math.max(0, currentLifetime(http));
+            if (lifetime == 0 && http.getHeaderField("ETag") == null
+                    && http.getHeaderField("Last-Modified") == null) {
+                return null;
+            }
+            String base = uri.toString();
+            String key = vary == null ? base : variantKey(base, vary, http.requestFields);
+            byte[] meta;
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.write(key.getBytes(StandardCharsets.UTF_8));
+                int keyLength = out.size();
+                Map<String, List<String>> fields = http.getHeaderFields();
+                out.writeInt(fields.size());
+                for (Map.Entry<String, List<String>> e : fields.entrySet()) {
+                    out.writeBoolean(e.getKey() != null);
+                    out.writeUTF(e.getKey() == null ? "" : e.getKey());
+                    out.writeInt(e.getValue().size());
+                    for (String v : e.getValue()) {
+                        out.writeUTF(v);
+                    }
+                }
+                ByteBuffer head = ByteBuffer.allocate(RECORD_HEADER);
+                head.putInt(RECORD_MAGIC).putInt(keyLength).putInt(out.size() - keyLength);
+                meta = bytes.toByteArray();
+                if (RECORD_HEADER + meta.length > segmentBytes
+                        || http.getContentLengthLong() > segmentBytes - RECORD_HEADER - meta.length) {
+                    return null;
+                }
+                return new Request(base, key, head, meta, lifetime);
+            } catch (UTFDataFormatException e) {
+                // a header field longer than 64 KB
+                return null;
+            }
+        }
+
+        /**
+         * Returns the number of {@link #get get} lookups that found a fresh entry.
+         *
+         * @return the number of hits.
+         */
+        public long hitCount() {
+            return hits.sum();
+        }
+
+        /**
+         * Returns the number of {@code GET} lookups through {@link #get get} that found 
+         * no fresh entry.
+         *
+         * @return the number of misses.
+         */
+        public long missCount() {
+            return misses.sum();
+        }
+
+        /**
+         * Returns the total size of the segment files, in bytes.
+         *
+         * @return the size of the cache on disk, not counting the index.
+         */
+        public long size() {
+            lock.lock();
+            try {
+                return totalBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Writes the index back to its file and closes the segment files. Entries 
+         * returned earlier can no longer be read.
+         *
+         * @throws IOException if a segment file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                index.force();
+                for (FileChannel ch : segments.values()) {
+                    ch.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* maps an existing index and drops entries of missing segments; false if it is not usable */
+        private boolean openIndex() throws IOException {
+            Path file = directory.resolve("index");
+            if (!Files.exists(file) || Files.size(file) < INDEX_HEADER) {
+                return false;
+            }
+            int n;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+                while (header.hasRemaining() && ch.read(header) > 0) { }
+                n = header.getInt(8);
+                if (header.getInt(0) != INDEX_MAGIC || header.getInt(4) != VERSION
+                        || n < MIN_SLOTS || Integer.bitCount(n) != 1
+                        || ch.size() != INDEX_HEADER + (long) n * SLOT) {
+                    return false;
+                }
+            }
+            slots = n;
+            index = mapIndex(file, n);
+            for (int i = 0; i < slots; i++) {
+                long h = index.getLong(slotAt(i));
+                if (h != EMPTY) {
+                    used++;
+                    if (isLive(h) && !segments.containsKey(index.getInt(slotAt(i) + 8))) {
+                        index.putLong(slotAt(i), DELETED);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static MappedByteBuffer mapIndex(Path file, int slots) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                   StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                                              INDEX_HEADER + (long) slots * SLOT);
+                map.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(8, slots);
+                return map;
+            }
+        }
+
+        private static int slotAt(int i) {
+            return INDEX_HEADER + i * SLOT;
+        }
+
+        /* FNV-1a of the key's characters, kept clear of the EMPTY and DELETED markers */
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h = (h ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 29;
+            return h == EMPTY || h == DELETED ? h + 2 : h;
+        }
+
+        private static boolean isLive(long hash) {
+            return hash != EMPTY && hash != DELETED;
+        }
+
+        /* called with the lock held */
+        private int find(long hash) {
+            int mask = slots - 1;
+            for (int i = (int) hash & mask, n = 0; n < slots; i = (i + 1) & mask, n++) {
+                long h = index.getLong(slotAt(i));
+                if (h == hash) {
+                    return i;
+                }
+                if (h == EMPTY) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        /* called with the lock held */
+        private void insert(long hash, int segment, long offset, long expires) throws IOException {
+            int i = find(hash);
+            if (i < 0) {
+                if ((used + 1) * 4L > slots * 3L) {
+                    rebuildIndex();
+                }
+                int mask = slots - 1;
+                i = (int) hash & mask;
+                while (isLive(index.getLong(slotAt(i)))) {
+                    i = (i + 1) & mask;
+                }
+                if (index.getLong(slotAt(i)) == EMPTY) {
+                    used++;
+                }
+            }
+            int at = slotAt(i);
+            index.putInt(at + 8, segment).putLong(at + 16, offset).putLong(at + 24, expires);
+            index.putLong(at, hash);
+        }
+
+        /* copies the live slots into a new index file, at most half full, that replaces the old one */
+        private void rebuildIndex() throws IOException {
+            int live = 0;
+            for (int i = 0; i < slots; i++) {
+                if (isLive(index.getLong(slotAt(i)))) {
+                    live++;
+                }
+            }
+            int n = MIN_SLOTS;
+            while (live * 2L > n) {
+                n <<= 1;
+            }
+            Path tmp = directory.resolve("index.tmp");
+            Files.deleteIfExists(tmp);
+            MappedByteBuffer map = mapIndex(tmp, n);
+            for (int i = 0; i < slots; i++) {
+                long h = index.getLong(slotAt(i));
+                if (isLive(h)) {
+                    int j = (int) h & (n - 1);
+                    while (map.getLong(slotAt(j)) != EMPTY) {
+                        j = (j + 1) & (n - 1);
+                    }
+                    for (int k = 0; k < SLOT; k += 8) {
+                        map.putLong(slotAt(j) + k, index.getLong(slotAt(i) + k));
+                    }
+                }
+            }
+            Files.move(tmp, directory.resolve("index"), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            index = map;
+            slots = n;
+            used = live;
+        }
+
+        private Path segmentFile(int segment) {
+            return directory.resolve(String.format("%08d.seg", segment));
+        }
+
+        /* called with the lock held */
+        private void newSegment() throws IOException {
+            int segment = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+            segments.put(segment, FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE_NEW,
+                                                   StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+
+        /* called with the lock held */
+        private void evictOldest() throws IOException {
+            Map.Entry<Integer, FileChannel> oldest = segments.pollFirstEntry();
+            for (int i = 0; i < slots; i++) {
+                if (isLive(index.getLong(slotAt(i))) && index.getInt(slotAt(i) + 8) == oldest.getKey()) {
+                    index.putLong(slotAt(i), DELETED);
+                }
+            }
+            totalBytes -= oldest.getValue().size();
+            oldest.getValue().close();
+            Files.delete(segmentFile(oldest.getKey()));
+        }
+
+        /* appends a finished record to the current segment and indexes it */
+        private void commit(Request request, Path body, long bodyLength) throws IOException {
+            lock.lock();
+            try (FileChannel src = FileChannel.open(body, StandardOpenOption.READ)) {
+                if (closed) {
+                    return;
+                }
+                long length = RECORD_HEADER + request.meta.length + bodyLength;
+                FileChannel seg = segments.lastEntry().getValue();
+                long offset = seg.size();
+                if (offset > 0 && offset + length > segmentBytes) {
+                    newSegment();
+                    seg = segments.lastEntry().getValue();
+                    offset = 0;
+                }
+                ByteBuffer head = request.head.duplicate();
+                head.putLong(12, bodyLength).putLong(20, request.lifetime).clear();
+                ByteBuffer[] parts = { head, ByteBuffer.wrap(request.meta) };
+                long pos = offset;
+                for (ByteBuffer part : parts) {
+                    while (part.hasRemaining()) {
+                        pos += seg.write(part, pos);
+                    }
+                }
+                for (long sent = 0; sent < bodyLength; ) {
+                    long n = seg.transferFrom(src, pos + sent, bodyLength - sent);
+                    if (n == 0) {
+                        throw new EOFException("Cache body file truncated");
+                    }
+                    sent += n;
+                }
+                int segment = segments.lastKey();
+                long expires = System.currentTimeMillis()
+                        + Math.min(request.lifetime, MAX_LIFETIME_MILLIS);
+                insert(hash(request.key), segment, offset, expires);
+                if (!request.key.equals(request.base)) {
+                    insert(hash(request.base), segment, offset, expires);
+                }
+                totalBytes += length;
+                while (totalBytes > maxBytes && segments.size() > 1) {
+                    evictOldest();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* the latest record indexed under key, or null; the caller checks its key against hash collisions */
+        private Entry read(String key) throws IOException {
+            int segment;
+            long offset;
+            long expires;
+            FileChannel ch;
+            lock.lock();
+            try {
+                if (closed) {
+                    return null;
+                }
+                int i = find(hash(key));
+                if (i < 0) {
+                    return null;
+                }
+                segment = index.getInt(slotAt(i) + 8);
+                offset = index.getLong(slotAt(i) + 16);
+                expires = index.getLong(slotAt(i) + 24);
+                ch = segments.get(segment);
+            } finally {
+                lock.unlock();
+            }
+            if (ch == null) {
+                return null;
+            }
+            try {
+                ByteBuffer head = ByteBuffer.allocate(RECORD_HEADER);
+                readFully(ch, head, offset);
+                if (head.getInt(0) != RECORD_MAGIC) {
+                    throw new IOException("Corrupt cache record in segment " + segment);
+                }
+                int keyLength = head.getInt(4);
+                int headerLength = head.getInt(8);
+                ByteBuffer meta = ByteBuffer.allocate(keyLength + headerLength);
+                readFully(ch, meta, offset + RECORD_HEADER);
+                String stored = new String(meta.array(), 0, keyLength, StandardCharsets.UTF_8);
+                DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(meta.array(), keyLength, headerLength));
+                Map<String, List<String>> headers = new HashMap<>();
+                for (int n = in.readInt(); n > 0; n--) {
+                    boolean named = in.readBoolean();
+                    String name = in.readUTF();
+                    String[] values = new String[in.readInt()];
+                    for (int v = 0; v < values.length; v++) {
+                        values[v] = in.readUTF();
+                    }
+                    headers.put(named ? name : null, List.of(values));
+                }
+                return new Entry(stored, Collections.unmodifiableMap(headers), ch, segment, offset,
+                                 offset + RECORD_HEADER + keyLength + headerLength,
+                                 head.getLong(12), head.getLong(20), expires);
+            } catch (ClosedChannelException e) {
+                // the segment was evicted meanwhile
+                return null;
+            }
+        }
+
+        private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+            while (dst.hasRemaining()) {
+                if (ch.read(dst, position + dst.position()) < 0) {
+                    throw new EOFException("Truncated cache record");
+                }
+            }
+        }
+
+        /* the freshness lifetime of a response less its Age, or -1 if it gives none */
+        private static long currentLifetime(HttpURLConnection http) {
+            long lifetime = http.getFreshnessLifetime();
+            long age = http.getHeaderFieldLong("Age", 0);
+            if (lifetime > 0 && age > 0) {
+                lifetime = age > lifetime / 1000 ? 0 : lifetime - age * 1000;
+            }
+            return lifetime;
+        }
+
+        /* the URI followed by each field named by Vary and the request's values for it */
+        private static String variantKey(String base, String vary, Map<String, List<String>> fields) {
+            StringBuilder key = new StringBuilder(base);
+            for (String name : vary == null ? new String[0] : vary.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (!name.isEmpty()) {
+                    key.append('\n').append(name).append(':');
+                    List<String> values = fields == null ? null : values(fields, name);
+                    if (values != null) {
+                        key.append(String.join(",", values));
+                    }
+                }
+            }
+            return key.toString();
+        }
+
+        private static List<String> values(Map<String, List<String>> fields, String name) {
+            for (Map.Entry<String, List<String>> e : fields.entrySet()) {
+                if (name.equalsIgnoreCase(e.getKey())) {
+                    return e.getValue();
+                }
+            }
+            return null;
+        }
+
+        /* the last value of a header field, compared ignoring case */
+        private static String field(Map<String, List<String>> fields, String name) {
+            List<String> values = values(fields, name);
+            return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        private static boolean hasDirective(String cacheControl, String... names) {
+            if (cacheControl == null) {
+                return false;
+            }
+            for (String directive : cacheControl.split(",")) {
+                int eq = directive.indexOf('=');
+                String name = (eq < 0 ? directive : directive.substring(0, eq)).trim();
+                for (String n : names) {
+                    if (n.equalsIgnoreCase(name)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * A response stored in a {@link DiskResponseCache}. The header fields are read 
+         * when the entry is looked up; the body stays in the segment file until it is 
+         * read.
+         */
+        public static final class Entry extends CacheResponse {
+            private final String key;
+            private final Map<String, List<String>> headers;
+            private final FileChannel channel;
+            private final int segment;
+            private final long offset;
+            private final long bodyOffset;
+            private final long bodyLength;
+            private final long lifetime;
+            private final long expires;
+
+            Entry(String key, Map<String, List<String>> headers, FileChannel channel, int segment,
+                  long offset, long bodyOffset, long bodyLength, long lifetime, long expires) {
+                this.key = key;
+                this.headers = headers;
+                this.channel = channel;
+                this.segment = segment;
+                this.offset = offset;
+                this.bodyOffset = bodyOffset;
+                this.bodyLength = bodyLength;
+                this.lifetime = lifetime;
+                this.expires = expires;
+            }
+
+            Entry(Entry entry, long expires) {
+                this(entry.key, entry.headers, entry.channel, entry.segment, entry.offset,
+                     entry.bodyOffset, entry.bodyLength, entry.lifetime, expires);
+            }
+
+            @Override
+            public Map<String, List<String>> getHeaders() {
+                return headers;
+            }
+
+            /**
+             * Returns a stream over the stored body, read from the segment file.
+             *
+             * @return a new stream positioned at the start of the body.
+             */
+            @Override
+            public InputStream getBody() {
+                return new InputStream() {
+                    private long pos;
+
+                    @Override
+                    public int read() throws IOException {
+                        byte[] b = new byte[1];
+                        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        Objects.checkFromIndexSize(off, len, b.length);
+                        if (pos >= bodyLength) {
+                            return -1;
+                        }
+                        int n = (int) Math.min(len, bodyLength - pos);
+                        n = channel.read(ByteBuffer.wrap(b, off, n), bodyOffset + pos);
+                        if (n < 0) {
+                            throw new EOFException("Truncated cache record");
+                        }
+                        pos += n;
+                        return n;
+                    }
+                };
+            }
+
+            /**
+             * Sends the stored body to the given channel with 
+             * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which the 
+             * operating system may perform without copying the bytes through the Java 
+             * heap when {@code target} is a socket.
+             *
+             * @param target the channel to write the body to, in blocking mode.
+             * @return the number of bytes sent.
+             * @throws IOException if the segment file cannot be read or {@code target} 
+             *         cannot be written.
+             */
+            public long transferBodyTo(WritableByteChannel target) throws IOException {
+                long sent = 0;
+                while (sent < bodyLength) {
+                    long n = channel.transferTo(bodyOffset + sent, bodyLength - sent, target);
+                    if (n == 0 && bodyOffset + sent >= channel.size()) {
+                        throw new EOFException("Truncated cache record");
+                    }
+                    sent += n;
+                }
+                return sent;
+            }
+
+            /**
+             * Returns the length of the stored body.
+             *
+             * @return the body length in bytes.
+             */
+            public long getBodyLength() {
+                return bodyLength;
+            }
+
+            /**
+             * Returns whether the entry can still be served without revalidation.
+             *
+             * @return {@code true} if the entry is fresh.
+             */
+            public boolean isFresh() {
+                return System.currentTimeMillis() < expires;
+            }
+
+            /**
+             * Returns the {@code ETag} of the stored response.
+             *
+             * @return the entity tag, or {@code null} if the response had none.
+             */
+            public String getETag() {
+                return field(headers, "ETag");
+            }
+
+            /**
+             * Returns the {@code Last-Modified} date of the stored response.
+             *
+             * @return the date in milliseconds since January 1, 1970 GMT, or {@code 0} if 
+             *         the response had no valid {@code Last-Modified} field.
+             */
+            public long getLastModified() {
+                String value = field(headers, "Last-Modified");
+                long date = value == null ? Long.MIN_VALUE : parseHttpDate(value.trim());
+                return date == Long.MIN_VALUE ? 0 : date;
+            }
+        }
+
+        /* Writes a response body to a temporary file, and appends it to a segment on close */
+        private final class Request extends CacheRequest {
+            private final String base;
+            private final String key;
+            private final ByteBuffer head;
+            private final byte[] meta;
+            private final long lifetime;
+            private final Path file;
+            private final OutputStream out;
+            private long length;
+            private boolean done;
+
+            Request(String base, String key, ByteBuffer head, byte[] meta, long lifetime)
+                    throws IOException {
+                this.base = base;
+                this.key = key;
+                this.head = head;
+                this.meta = meta;
+                this.lifetime = lifetime;
+                file = Files.createTempFile(directory, "put", ".tmp");
+                out = new BufferedOutputStream(Files.newOutputStream(file));
+            }
+
+            @Override
+            public OutputStream getBody() {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[] { (byte) b }, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (done) {
+                            return;
+                        }
+                        length += len;
+                        if (RECORD_HEADER + meta.length + length > segmentBytes) {
+                            abort();
+                            return;
+                        }
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        if (done) {
+                            return;
+                        }
+                        done = true;
+                        try {
+                            out.close();
+                            commit(Request.this, file, length);
+                        } finally {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void abort() {
+                if (!done) {
+                    done = true;
+                    try {
+                        out.close();
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // the temporary file is removed when the cache is next opened
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how long the server asked the client to wait before retrying, as given by 
+     * the {@code Retry-After} header field of a {@link #HTTP_UNAVAILABLE}, 
+     * {@link #HTTP_TOO_MANY_REQUESTS} or redirect response. The field may hold a number 
+     * of seconds or an HTTP date, which is read with 
+     * {@link #getHeaderFieldDate(String, long)}.
+     *
+     * @return the delay in milliseconds, {@code 0} if the date has already passed, or 
+     *         {@code -1} if the field is missing or invalid.
      *
-     * @see java.net.HttpURLConnection#getResponseMessage()
+     * @see RetryPolicy
      */
-    public int getResponseCode() throws IOException {
-        return -1;
+    public long getRetryAfter() {
+        String value = getHeaderField("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        if (!value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            try {
+                long seconds = Long.parseLong(value);
+                return seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : seconds * 1000;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        long date = getHeaderFieldDate("Retry-After", Long.MIN_VALUE);
+        if (date == Long.MIN_VALUE) {
+            return -1;
+        }
+        return Math.max(0, date - System.currentTimeMillis());
     }
 
     /**
-     * Returns the HTTP response message returned by the server, which provides 
-     * a textual description of the status code. For example:
-     * <ul>
-     *   <li>{@code HTTP/1.0 200 OK} returns {@code "OK"}</li>
-     *   <li>{@code HTTP/1.0 404 Not Found} returns {@code "Not Found"}</li>
-     * </ul>
-     * <p>
-     * This method should be called after establishing a connection and receiving 
-     * a response from the server. It is generally used in conjunction with 
-     * {@link #getResponseCode()} to interpret the server's response. The response 
-     * code provides the numerical status, while the response message provides 
-     * the textual description.
-     * </p>
-     * <p>
-     * If no valid response message can be determined (e.g., if the response is 
-     * not a valid HTTP response), this method returns {@code null}.
-     * </p>
+     * Decides whether and when a failed request should be retried, for implementations 
+     * and callers that retry requests answered with {@link #HTTP_UNAVAILABLE}, 
+     * {@link #HTTP_TOO_MANY_REQUESTS} or {@link #HTTP_GATEWAY_TIMEOUT}.
+     *
+     * <p>Only requests with an {@linkplain RequestMethod#isIdempotent() idempotent} 
+     * method are retried. If the response has a {@linkplain #getRetryAfter() 
+     * Retry-After} delay, that delay is used, unless it exceeds the maximum delay, in 
+     * which case the request is not retried. Otherwise the delay is chosen with 
+     * "decorrelated jitter": a random value between the base delay and three times the 
+     * previous delay, capped at the maximum delay.</p>
+     *
+     * <p>Retries are also limited by a retry budget per host. Every request sent to 
+     * a host with {@link #recordRequest(String)} adds a fraction of a token to that 
+     * host's bucket, up to a fixed capacity, and every retry takes a whole token. If 
+     * the bucket is empty, the request is not retried. During an outage the extra 
+     * load caused by retries is therefore bounded by that fraction of the normal 
+     * request rate, instead of multiplying it.</p>
+     *
+     * <p>A {@code RetryPolicy} is thread-safe and is meant to be shared.</p>
+     *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * try {
-     *     httpConn.connect(); // Ensure the connection is established
-     *     int responseCode = httpConn.getResponseCode();
-     *     String responseMessage = httpConn.getResponseMessage();
-     *     System.out.println("Response Code: " + responseCode);
-     *     System.out.println("Response Message: " + responseMessage);
-     * } catch (IOException e) {
-     *     e.printStackTrace();  // Handle potential connection error
+     * HttpURLConnection.RetryPolicy policy = new HttpURLConnection.RetryPolicy(
+     *         3, Duration.ofMillis(100), Duration.ofSeconds(10), 0.1, 10);
+     * long delay = 0;
+     * for (int retries = 0; ; retries++) {
+     *     HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     *     policy.recordRequest(url.getAuthority());
+     *     delay = policy.retryDelay(httpConn, retries, delay);
+     *     if (delay < 0) {
+     *         return httpConn; // Success, or not retryable
+     *     }
+     *     httpConn.disconnect();
+     *     Thread.sleep(delay);
      * }
      * }</pre>
-     * 
-     * @return the HTTP response message, or {@code null} if no valid message 
-     *         is found.
-     * @throws IOException if an error occurs while connecting to the server.
-     * 
-     * @see #getResponseCode()
      */
-    public String getResponseMessage() throws IOException {
-        getResponseCode();
-        return responseMessage;
+    public static final class RetryPolicy {
+        /* one token, in the milli-token units of the buckets */
+        private static final long TOKEN = 1000;
+
+        private final int maxRetries;
+        private final long baseDelay;
+        private final long maxDelay;
+        private final long depositPerRequest;
+        private final long capacity;
+        private final ConcurrentHashMap<String, AtomicLong> budgets = new ConcurrentHashMap<>();
+
+        /**
+         * Creates a retry policy.
+         *
+         * @param maxRetries the most retries of a single request.
+         * @param baseDelay the smallest delay before a retry.
+         * @param maxDelay the largest delay before a retry, including delays asked for 
+         *        with {@code Retry-After}.
+         * @param budgetRatio the fraction of a retry token earned by each request to a 
+         *        host, between 0 and 1.
+         * @param budgetCapacity the most retry tokens a host can accumulate.
+         * @throws IllegalArgumentException if an argument is out of range.
+         * @throws NullPointerException if a delay is {@code null}.
+         */
+        public RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay,
+                           double budgetRatio, int budgetCapacity) {
+            if (maxRetries < 0 || baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0
+                    || !(budgetRatio >= 0 && budgetRatio <= 1) || budgetCapacity < 0) {
+                throw new IllegalArgumentException("Invalid retry policy");
+            }
+            this.maxRetries = maxRetries;
+            this.baseDelay = baseDelay.toMillis();
+            this.maxDelay = maxDelay.toMillis();
+            this.depositPerRequest = Math.round(budgetRatio * TOKEN);
+            this.capacity = budgetCapacity * TOKEN;
+        }
+
+        /**
+         * Records that a request, including a retry, is being sent to a host, which 
+         * adds to the host's retry budget.
+         *
+         * @param host the host, and port if not the default, as in 
+         *        {@link URL#getAuthority()}.
+         */
+        public void recordRequest(String host) {
+            budget(host).accumulateAndGet(depositPerRequest,
+                    (b, d) -> Math.min(capacity, b + d));
+        }
+
+        /**
+         * Returns how long to wait before retrying the request of a connection whose 
+         * response has been received, or {@code -1} if it should not be retried. A 
+         * positive answer takes a token from the host's retry budget.
+         *
+         * @param conn the connection that received the response.
+         * @param retries the number of times the request has already been retried.
+         * @param previousDelay the delay returned for the previous retry, or {@code 0} 
+         *        before the first retry.
+         * @return the delay in milliseconds before retrying, or {@code -1} if the 
+         *         request should not be retried.
+         * @throws IOException if the response code cannot be obtained.
+         */
+        public long retryDelay(HttpURLConnection conn, int retries, long previousDelay)
+                throws IOException {
+            if (retries >= maxRetries) {
+                return -1;
+            }
+            int code = conn.getResponseCode();
+            if (code != HTTP_UNAVAILABLE && code != HTTP_TOO_MANY_REQUESTS
+                    && code != HTTP_GATEWAY_TIMEOUT) {
+                return -1;
+            }
+            RequestMethod method = lookupMethod(conn.getRequestMethod());
+            if (method == null || !method.isIdempotent()) {
+                return -1;
+            }
+            long delay = conn.getRetryAfter();
+            if (delay > maxDelay) {
+                return -1;
+            }
+            if (delay < 0) {
+                long upper = Math.max(baseDelay, previousDelay) * 3;
+                delay = Math.min(maxDelay,
+                        ThreadLocalRandom.current().nextLong(baseDelay, Math.max(baseDelay, upper) + 1));
+            }
+            AtomicLong budget = budget(conn.getURL().getAuthority());
+            long b;
+            do {
+                b = budget.get();
+                if (b < TOKEN) {
+                    return -1;
+                }
+            } while (!budget.compareAndSet(b, b - TOKEN));
+            return delay;
+        }
+
+        private AtomicLong budget(String host) {
+            return budgets.computeIfAbsent(host, h -> new AtomicLong(capacity));
+        }
     }
 
     /**
-     * Returns the value of the specified header field parsed as a date. The result 
-     * is the number of milliseconds since January 1, 1970 GMT. If the field is 
-     * missing or cannot be parsed as a date, the provided {@code Default} value 
-     * is returned.
+     * Sends {@code GET} requests with hedging, to cut the tail latency of requests to 
+     * replicated servers.
+     *
+     * <p>The request is sent on one connection. If its response has not arrived by the 
+     * time given by a percentile of the recent latencies of the host, the same request 
+     * is sent again on a second connection, which the implementation takes from its 
+     * {@link ConnectionPool} like any other. The first of the two to receive a response 
+     * is returned. The wait for the other one is cancelled if it has not started yet, 
+     * and the other connection is {@linkplain #disconnect() disconnected} once no thread 
+     * is using it any more. If the first request fails before the hedge delay, the hedge 
+     * is sent at once; if one of the two fails, the other one is still waited for. 
+     * Requests with any method other than {@code GET} are sent once, without 
+     * hedging.</p>
+     *
+     * <p>Until a host has enough latency samples, its requests are not hedged. A sample 
+     * is the time from sending the first request to receiving its response, and is 
+     * taken only when the first request answers before its hedge, so that the samples 
+     * describe the latency of requests that were not cut short.</p>
+     *
+     * <p>Hedges are limited by a global budget. Every {@code GET} request adds a 
+     * fraction of a token to the budget, up to a small burst, and every hedge takes a 
+     * whole token. When the budget is empty, requests are not hedged, so hedges add at 
+     * most that fraction to the {@code GET} traffic even when a server is slow for 
+     * every request.</p>
+     *
+     * <p>The responses are waited for on threads of the given executor, one per 
+     * connection. A {@code HedgePolicy} is thread-safe and is meant to be shared.</p>
      *
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
-     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-     * long date = httpConn.getHeaderFieldDate("Last-Modified", System.currentTimeMillis());
-     * if (date != 0) {
-     *     System.out.println("Last-Modified: " + new Date(date));
-     * } else {
-     *     System.out.println("No valid Last-Modified header.");
+     * HttpURLConnection.HedgePolicy hedging = new HttpURLConnection.HedgePolicy(
+     *         0.95, Duration.ofMillis(10), 0.05, Executors.newVirtualThreadPerTaskExecutor());
+     * HttpURLConnection httpConn = hedging.send(url, c -> c.setRequestProperty("Accept", "application/json"));
+     * try (InputStream in = httpConn.getInputStream()) {
+     *     // Read the response
      * }
      * }</pre>
-     *
-     * @param name the name of the header field.
-     * @param Default the default value to return if the field is missing or 
-     *                malformed.
-     * @return the parsed date value in milliseconds since January 1, 1970 GMT, 
-     *         or the {@code Default} value if the field is missing or invalid.
-     *
-     * @see java.net.URLConnection#getHeaderFieldDate(String, long)
      */
-    public long getHeaderFieldDate(String name, long defaultValue) {
-        return defaultValue;
+    public static final class HedgePolicy {
+        /* latency samples kept per host, and the fewest needed before hedging */
+        private static final int WINDOW = 128;
+        private static final int MIN_SAMPLES = 16;
+        /* one token, in milli-tokens, and the most hedges that can be sent in a burst */
+        private static final long TOKEN = 1000;
+        private static final long BURST = 10 * TOKEN;
+
+        private final double percentile;
+        private final long minDelay;
+        private final long depositPerRequest;
+        private final Executor executor;
+        private final AtomicLong budget = new AtomicLong(BURST);
+        private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder hedgeWins = new LongAdder();
+
+        /**
+         * Creates a hedging policy.
+         *
+         * @param percentile the percentile of recent latency after which a request is 
+         *        hedged, between 0 (exclusive) and 1 (inclusive), such as {@code 0.95}.
+         * @param minDelay the shortest time to wait before hedging.
+         * @param maxHedgeRatio the most hedges per request over time, between 0 and 1.
+         * @param executor the executor that waits for responses.
+         * @throws IllegalArgumentException if an argument is out of range.
+         * @throws NullPointerException if {@code minDelay} or {@code executor} is 
+         *         {@code null}.
+         */
+        public HedgePolicy(double percentile, Duration minDelay, double maxHedgeRatio,
+                           Executor executor) {
+            if (!(percentile > 0 && percentile <= 1) || minDelay.isNegative()
+                    || !(maxHedgeRatio >= 0 && maxHedgeRatio <= 1)) {
+                throw new IllegalArgumentException("Invalid hedge policy");
+            }
+            this.percentile = percentile;
+            this.minDelay = minDelay.toNanos();
+            this.depositPerRequest = Math.round(maxHedgeRatio * TOKEN);
+            this.executor = Objects.requireNonNull(executor);
+        }
+
+        /**
+         * Opens a connection to the URL, applies {@code setup} to it, and waits for the 
+         * response, hedging the request if it is a {@code GET} and is slow.
+         *
+         * @param url the URL to request.
+         * @param setup configures each connection before it is connected, for example 
+         *        to add request properties; may be {@code null}. It is applied to the 
+         *        hedge connection too, so it should not have side effects.
+         * @return the connection that received a response first.
+         * @throws IOException if both connections fail, or the only connection fails.
+         * @throws ClassCastException if the URL does not open an 
+         *         {@code HttpURLConnection}.
+         */
+        public HttpURLConnection send(URL url, Consumer<? super HttpURLConnection> setup)
+                throws IOException {
+            HttpURLConnection primary = open(url, setup);
+            if (!"GET".equals(primary.getRequestMethod())) {
+                primary.getResponseCode();
+                return primary;
+            }
+            requests.increment();
+            budget.accumulateAndGet(depositPerRequest, (b, d) -> Math.min(BURST, b + d));
+            String host = url.getAuthority();
+            LatencyWindow window = latencies.computeIfAbsent(host, h -> new LatencyWindow());
+            long start = System.nanoTime();
+            Attempt first = new Attempt(primary);
+            Attempt second = null;
+            HttpURLConnection winner;
+            try {
+                long delay = window.percentile(percentile);
+                if (delay >= 0) {
+                    try {
+                        // returns early if the primary fails, so that the hedge starts at once
+                        first.response.handle((c, e) -> c)
+                                .get(Math.max(minDelay, delay), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        // no response yet
+                    }
+                    if ((!first.response.isDone() || first.response.isCompletedExceptionally())
+                            && takeToken()) {
+                        try {
+                            second = new Attempt(open(url, setup));
+                            hedges.increment();
+                        } catch (IOException | RejectedExecutionException e) {
+                            // wait for the primary alone
+                        }
+                    }
+                }
+                winner = second == null
+                        ? first.response.get()
+                        : firstResponse(first.response, second.response).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CompletionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                first.abandon();
+                if (second != null) {
+                    second.abandon();
+                }
+                throw new InterruptedIOException("Interrupted waiting for " + url);
+            }
+            if (winner == primary) {
+                window.add(System.nanoTime() - start);
+            }
+            if (second != null) {
+                if (winner == second.conn) {
+                    hedgeWins.increment();
+                }
+                (winner == primary ? second : first).abandon();
+            }
+            return winner;
+        }
+
+        /**
+         * Returns the number of {@code GET} requests sent with 
+         * {@link #send(URL, Consumer)}, which are the requests that may be hedged.
+         *
+         * @return the number of requests.
+         */
+        public long getRequestCount() {
+            return requests.sum();
+        }
+
+        /**
+         * Returns the number of hedge requests sent.
+         *
+         * @return the number of hedges.
+         */
+        public long getHedgeCount() {
+            return hedges.sum();
+        }
+
+        /**
+         * Returns the number of hedge requests that received a response before the 
+         * request they duplicated. The ratio of this count to 
+         * {@link #getHedgeCount()} shows how much hedging helps.
+         *
+         * @return the number of hedges that won.
+         */
+        public long getHedgeWinCount() {
+            return hedgeWins.sum();
+        }
+
+        private static HttpURLConnection open(URL url, Consumer<? super HttpURLConnection> setup)
+                throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            if (setup != null) {
+                setup.accept(conn);
+            }
+            return conn;
+        }
+
+        /*
+         * A request whose response is waited for on the executor. response completes with
+         * the connection, or fails; settled completes once the waiting task has finished
+         * with the connection, or will never start because response was cancelled.
+         */
+        private final class Attempt {
+            final HttpURLConnection conn;
+            final CompletableFuture<HttpURLConnection> response = new CompletableFuture<>();
+            final CompletableFuture<Void> settled = new CompletableFuture<>();
+
+            Attempt(HttpURLConnection conn) {
+                this.conn = conn;
+                executor.execute(() -> {
+                    try {
+                        if (!response.isDone()) {
+                            conn.getResponseCode();
+                            response.complete(conn);
+                        }
+                    } catch (Throwable t) {
+                        // as CompletableFuture.supplyAsync does, so that send() never hangs
+                        response.completeExceptionally(t);
+                    } finally {
+                        settled.complete(null);
+                    }
+                });
+            }
+
+            /* cancels the wait if it has not started, and disconnects once nothing uses the connection */
+            void abandon() {
+                response.cancel(false);
+                settled.whenComplete((v, e) -> conn.disconnect());
+            }
+        }
+
+        /* completes with the first successful result, or the last failure if both fail */
+        private static CompletableFuture<HttpURLConnection> firstResponse(
+                CompletableFuture<HttpURLConnection> a, CompletableFuture<HttpURLConnection> b) {
+            CompletableFuture<HttpURLConnection> result = new CompletableFuture<>();
+            AtomicInteger failures = new AtomicInteger();
+            for (CompletableFuture<HttpURLConnection> f : Arrays.asList(a, b)) {
+                f.whenComplete((conn, e) -> {
+                    if (e == null) {
+                        result.complete(conn);
+                    } else if (failures.incrementAndGet() == 2) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            }
+            return result;
+        }
+
+        private boolean takeToken() {
+            long b;
+            do {
+                b = budget.get();
+                if (b < TOKEN) {
+                    return false;
+                }
+            } while (!budget.compareAndSet(b, b - TOKEN));
+            return true;
+        }
+
+        /* A ring of the most recent latencies of one host, in nanoseconds */
+        private static final class LatencyWindow {
+            private final ReentrantLock lock = new ReentrantLock();
+            private final long[] samples = new long[WINDOW];
+            private int count;
+            private int next;
+
+            void add(long latency) {
+                lock.lock();
+                try {
+                    samples[next] = latency;
+                    next = (next + 1) % WINDOW;
+                    count = Math.min(count + 1, WINDOW);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            long percentile(double p) {
+                long[] sorted;
+                lock.lock();
+                try {
+                    if (count < MIN_SAMPLES) {
+                        return -1;
+                    }
+                    sorted = Arrays.copyOf(samples, count);
+                } finally {
+                    lock.unlock();
+                }
+                Arrays.sort(sorted);
+                return sorted[(int) Math.ceil(p * sorted.length) - 1];
+            }
+        }
+    }
+
+    /* Month and weekday abbreviations used in HTTP dates; WEEKDAYS starts at 1970-01-01 */
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final String WEEKDAYS = "ThuFriSatSunMonTueWed";
+
+    /*
+     * Values recently parsed by getHeaderFieldDate (millis), in slots chosen by the hash
+     * of the text, and the last value formatted by formatHttpDate (seconds). HttpDate is
+     * immutable, so the slots need no synchronization; a lost update only costs a parse.
+     */
+    private static final HttpDate[] PARSED_DATES = new HttpDate[16];
+    private static volatile HttpDate lastFormattedDate;
+
+    private static final class HttpDate {
+        final String text;
+        final long millis;
+
+        HttpDate(String text, long millis) {
+            this.text = text;
+            this.millis = millis;
+        }
+    }
+
+    /*
+     * Parses an IMF-fixdate, RFC 850 or asctime() date. Returns Long.MIN_VALUE if
+     * the value is not in one of those formats; the day of the week is not checked.
+     */
+    private static long parseHttpDate(String s) {
+        int len = s.length();
+        int day, month, year, t;
+        if (len == 29 && s.charAt(3) == ',') {
+            // Sun, 06 Nov 1994 08:49:37 GMT
+            if (s.charAt(4) != ' ' || s.charAt(7) != ' ' || s.charAt(11) != ' '
+                    || s.charAt(16) != ' ' || !s.startsWith(" GMT", 25)) {
+                return Long.MIN_VALUE;
+            }
+            day = parseDigits(s, 5, 2);
+            month = parseMonth(s, 8);
+            year = parseDigits(s, 12, 4);
+            t = 17;
+        } else if (len == 24 && s.charAt(3) == ' ') {
+            // Sun Nov  6 08:49:37 1994
+            if (s.charAt(7) != ' ' || s.charAt(10) != ' ' || s.charAt(19) != ' ') {
+                return Long.MIN_VALUE;
+            }
+            day = s.charAt(8) == ' ' ? parseDigits(s, 9, 1) : parseDigits(s, 8, 2);
+            month = parseMonth(s, 4);
+            year = parseDigits(s, 20, 4);
+            t = 11;
+        } else {
+            // Sunday, 06-Nov-94 08:49:37 GMT
+            int c = s.indexOf(',');
+            if (c < 6 || len != c + 24 || s.charAt(c + 1) != ' ' || s.charAt(c + 4) != '-'
+                    || s.charAt(c + 8) != '-' || s.charAt(c + 11) != ' '
+                    || !s.startsWith(" GMT", c + 20)) {
+                return Long.MIN_VALUE;
+            }
+            day = parseDigits(s, c + 2, 2);
+            month = parseMonth(s, c + 5);
+            year = parseDigits(s, c + 9, 2);
+            if (year >= 0) {
+                // RFC 7231: a two-digit year more than 50 years ahead is in the past century
+                int thisYear = (int) (1970 + System.currentTimeMillis() / 31556952000L);
+                year += 2000;
+                if (year > thisYear + 50) {
+                    year -= 100;
+                }
+            }
+            t = c + 12;
+        }
+        if (s.charAt(t + 2) != ':' || s.charAt(t + 5) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int hour = parseDigits(s, t, 2);
+        int minute = parseDigits(s, t + 3, 2);
+        int second = parseDigits(s, t + 6, 2);
+        if (month < 1 || year < 1 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 60) {
+            return Long.MIN_VALUE;
+        }
+
+        // days since 1970-01-01 from the civil date
+        int y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468;
+        return ((days * 24 + hour) * 60 + minute) * 60_000L + second * 1000L;
+    }
+
+    private static int parseDigits(String s, int off, int count) {
+        int n = 0;
+        for (int i = off; i < off + count; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    private static int parseMonth(String s, int off) {
+        for (int m = 0; m < 12; m++) {
+            if (s.regionMatches(off, MONTHS, m * 3, 3)) {
+                return m + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static void putDigits(char[] buf, int off, int value, int count) {
+        for (int i = off + count - 1; i >= off; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
     }
 
 
@@ -799,7 +5752,15 @@ public abstract class HttpURLConnection extends URLConnection {
      * to release network resources efficiently. It is especially important to call 
      * {@code disconnect()} in environments with limited resources (e.g., mobile devices 
      * or embedded systems).
-     * 
+     *
+     * <p>Because {@code disconnect()} closes the leased connection instead of returning
+     * it to the keep-alive cache (see {@link ConnectionPool}), callers that want the connection reused should read
+     * the response body to the end and close its stream, and call {@code disconnect()}
+     * only when the server or the exchange is to be abandoned, as described under
+     * <em>Connection Reuse</em> in the class description.
+     * Either way, implementations release the I/O buffers held for the exchange, 
+     * for example to {@link BufferPool}.
+     *
      * <p><b>Note:</b> This method is not thread-safe. If multiple threads are using 
      * the same {@code HttpURLConnection}, care must be taken to avoid calling 
      * {@code disconnect()} while other threads are performing network operations on it.
@@ -901,6 +5862,11 @@ public abstract class HttpURLConnection extends URLConnection {
      * encountered an error while processing the request, but still sent useful 
      * error data. If no error occurred, the server did not send any error data, 
      * or the connection was not made, this method returns {@code null}.
+     *
+     * <p>Reading the error stream to the end and closing it lets the connection be 
+     * reused. If the application never reads it, implementations drain small error 
+     * bodies themselves (see {@link #drainBody(InputStream, long, long)}), so that 
+     * ignoring an error response does not cost a new connection.
      * 
      * <p><b>Usage Example:</b></p>
      * <pre>{@code
@@ -928,6 +5894,409 @@ public abstract class HttpURLConnection extends URLConnection {
         return null;
     }
 
+    /* largest read buffer used by drainBody() */
+    private static final int DRAIN_BUFFER_SIZE = 8192;
+
+    /* number of connections kept reusable by draining an unread body */
+    private static final LongAdder drainedConnections = new LongAdder();
+
+    /* shared executor for drainBodyAsync(); its threads exit when idle */
+    private static final ThreadPoolExecutor drainExecutor = newDrainExecutor();
+
+    private static ThreadPoolExecutor newDrainExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                4, 4, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(256), r -> {
+                    Thread t = new Thread(r, "HttpURLConnection-drain");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Reads and discards the rest of a response body, so that the connection it arrived 
+     * on can be {@linkplain ConnectionPool#release(Route, Closeable, boolean) released} 
+     * to the keep-alive cache as reusable instead of being closed. 
+     * Implementations should call this method when a response or 
+     * {@linkplain #getErrorStream() error} body has not been read to the end by the 
+     * time the stream is closed or the connection is released, which commonly happens 
+     * when callers check the response code of a 4xx or 5xx response and ignore the 
+     * body.
+     *
+     * <p>Draining is bounded: it stops, and the connection should be closed instead, 
+     * once more than {@code maxBytes} have been read or {@code maxMillis} have elapsed. 
+     * The time limit is checked between reads, so the stream should have a read timeout 
+     * set. The stream is not closed by this method.</p>
+     *
+     * @param in the unread remainder of the body.
+     * @param maxBytes the most bytes to read before giving up.
+     * @param maxMillis the most milliseconds to spend before giving up.
+     * @return {@code true} if the end of the body was reached within the limits and 
+     *         the connection can be reused, {@code false} otherwise.
+     *
+     * @see #drainBodyAsync(InputStream, long, long)
+     * @see #getDrainedConnectionCount()
+     */
+    protected static boolean drainBody(InputStream in, long maxBytes, long maxMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        // room for one byte past maxBytes, clamped before maxBytes + 1 can overflow
+        byte[] buf = new byte[maxBytes >= DRAIN_BUFFER_SIZE ? DRAIN_BUFFER_SIZE
+                              : (int) Math.max(1, maxBytes + 1)];
+        long total = 0;
+        try {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                total += n;
+                if (total > maxBytes || System.nanoTime() - deadline > 0) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        drainedConnections.increment();
+        return true;
+    }
+
+    /**
+     * Drains the rest of a response body as {@link #drainBody(InputStream, long, long)} 
+     * does, but on a small shared executor, so that the thread releasing the connection 
+     * does not wait for the body to arrive. If the executor is saturated, the body is 
+     * not drained and the returned future completes with {@code false}.
+     *
+     * @param in the unread remainder of the body.
+     * @param maxBytes the most bytes to read before giving up.
+     * @param maxMillis the most milliseconds to spend before giving up.
+     * @return a future that completes with {@code true} if the connection can be 
+     *         reused, or {@code false} if it should be closed.
+     *
+     * @see #drainBody(InputStream, long, long)
+     */
+    protected static CompletableFuture<Boolean> drainBodyAsync(InputStream in, long maxBytes,
+                                                               long maxMillis) {
+        try {
+            return CompletableFuture.supplyAsync(() -> drainBody(in, maxBytes, maxMillis),
+                                                 drainExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Returns the number of connections that were kept reusable by draining an unread 
+     * response body with {@link #drainBody(InputStream, long, long)} or 
+     * {@link #drainBodyAsync(InputStream, long, long)}.
+     *
+     * @return the number of successfully drained bodies.
+     */
+    public static long getDrainedConnectionCount() {
+        return drainedConnections.sum();
+    }
+
+    /**
+     * Wraps a response body stream so that it delivers the body decoded according to 
+     * its {@code Content-Encoding}. Implementations should apply this method to the 
+     * streams they return from {@code getInputStream()} and {@link #getErrorStream()} 
+     * when {@link #getContentDecoding()} is {@code true}.
+     *
+     * <p>The {@code gzip}, {@code x-gzip} and {@code deflate} (zlib) encodings are 
+     * decoded; for any other value, including {@code null} and {@code identity}, 
+     * {@code in} is returned unchanged. The returned stream takes its 
+     * {@link java.util.zip.Inflater Inflater} from a bounded pool, and returns it, 
+     * reset, when the stream is closed, so the stream must be closed after use. The 
+     * gzip checksum and length are verified at the end of each member. A gzip body 
+     * made of several members is decoded as their concatenation, and any other bytes 
+     * after the last member are reported as an error.</p>
+     *
+     * @param in the response body stream as received.
+     * @param contentEncoding the value of the {@code Content-Encoding} header field, 
+     *        or {@code null} if there is none.
+     * @return a stream that delivers the decoded body.
+     * @throws IOException if the first gzip header cannot be read or is invalid.
+     *
+     * @see #setContentDecoding(boolean)
+     */
+    protected static InputStream decodeContent(InputStream in, String contentEncoding)
+            throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+        switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip":
+            case "x-gzip":
+                return new PooledInflaterInputStream(in, true);
+            case "deflate":
+                return new PooledInflaterInputStream(in, false);
+            default:
+                return in;
+        }
+    }
+
+    /* reset Inflaters kept for reuse, for gzip (nowrap) and zlib input */
+    private static final int INFLATER_POOL_SIZE = 32;
+    private static final ArrayBlockingQueue<Inflater> GZIP_INFLATERS =
+            new ArrayBlockingQueue<>(INFLATER_POOL_SIZE);
+    private static final ArrayBlockingQueue<Inflater> ZLIB_INFLATERS =
+            new ArrayBlockingQueue<>(INFLATER_POOL_SIZE);
+
+    private static final class PooledInflaterInputStream extends InflaterInputStream {
+        private final ArrayBlockingQueue<Inflater> pool;
+        private final CRC32 crc;
+        private boolean eof;
+        private boolean closed;
+
+        PooledInflaterInputStream(InputStream in, boolean gzip) throws IOException {
+            super(in, borrow(gzip ? GZIP_INFLATERS : ZLIB_INFLATERS, gzip), 8192);
+            pool = gzip ? GZIP_INFLATERS : ZLIB_INFLATERS;
+            crc = gzip ? new CRC32() : null;
+            if (gzip) {
+                try {
+                    if (readRaw() != 0x1f || readRaw() != 0x8b) {
+                        throw new ZipException("Not in GZIP format");
+                    }
+                    readGzipHeader();
+                } catch (IOException e) {
+                    close();
+                    throw e;
+                }
+            }
+        }
+
+        private static Inflater borrow(ArrayBlockingQueue<Inflater> pool, boolean nowrap) {
+            Inflater inf = pool.poll();
+            return inf != null ? inf : new Inflater(nowrap);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (crc == null) {
+                return super.read(b, off, len);
+            }
+            while (!eof) {
+                int n = super.read(b, off, len);
+                if (n >= 0) {
+                    crc.update(b, off, n);
+                    return n;
+                }
+                if (!nextMember()) {
+                    eof = true;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                // the Inflater was supplied, so super.close() does not end it
+                super.close();
+                inf.reset();
+                if (!pool.offer(inf)) {
+                    inf.end();
+                }
+            }
+        }
+
+        /* the rest of a gzip member header, after the magic bytes */
+        private void readGzipHeader() throws IOException {
+            if (readRaw() != 8) {
+                throw new ZipException("Unsupported GZIP compression method");
+            }
+            int flags = readRaw();
+            for (int i = 0; i < 6; i++) {   // MTIME, XFL, OS
+                readRaw();
+            }
+            if ((flags & 4) != 0) {         // FEXTRA
+                int xlen = readRaw() | (readRaw() << 8);
+                for (int i = 0; i < xlen; i++) {
+                    readRaw();
+                }
+            }
+            if ((flags & 8) != 0) {         // FNAME
+                while (readRaw() != 0) { }
+            }
+            if ((flags & 16) != 0) {        // FCOMMENT
+                while (readRaw() != 0) { }
+            }
+            if ((flags & 2) != 0) {         // FHCRC
+                readRaw();
+                readRaw();
+            }
+        }
+
+        /*
+         * Checks the trailer of the member just inflated, then starts the next member 
+         * if another gzip header follows (RFC 1952 section 2.2). Returns false at the 
+         * end of the body; any other trailing bytes are an error.
+         */
+        private boolean nextMember() throws IOException {
+            if (!inf.finished()) {
+                return false;
+            }
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v |= (long) readRaw() << (8 * i);
+            }
+            if ((v & 0xffffffffL) != crc.getValue()
+                    || (v >>> 32) != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            int b = nextRaw();
+            if (b == -1) {
+                return false;
+            }
+            if (b != 0x1f || readRaw() != 0x8b) {
+                throw new ZipException("Trailing data after GZIP stream");
+            }
+            int rem = inf.getRemaining();
+            inf.reset();
+            inf.setInput(buf, len - rem, rem);
+            crc.reset();
+            readGzipHeader();
+            return true;
+        }
+
+        private int readRaw() throws IOException {
+            int b = nextRaw();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            return b;
+        }
+
+        /*
+         * The next byte not consumed by the Inflater, or -1 at the end of the body. The 
+         * bytes come from buf, which is refilled with a bulk read of in when the 
+         * Inflater has no input left, so headers and trailers are read through the same 
+         * buffer as the compressed data.
+         */
+        private int nextRaw() throws IOException {
+            int rem = inf.getRemaining();
+            if (rem == 0) {
+                int n;
+                do {
+                    n = in.read(buf, 0, buf.length);
+                } while (n == 0);
+                if (n == -1) {
+                    return -1;
+                }
+                len = rem = n;
+            }
+            int b = buf[len - rem] & 0xff;
+            inf.setInput(buf, len - rem + 1, rem - 1);
+            return b;
+        }
+    }
+
+    /**
+     * Reads a sequence of bytes of the response body into the given buffer. This is 
+     * the channel-style counterpart of reading from {@link #getInputStream()}, and 
+     * reads from the same body: the two must not be interleaved.
+     *
+     * <p>At most {@code dst.remaining()} bytes are read, starting at the buffer's 
+     * current position. When {@code dst} is a direct buffer and the body is 
+     * identity-encoded with a known {@code Content-Length}, an implementation may 
+     * read straight from the socket into {@code dst} without copying through a heap 
+     * array.</p>
+     *
+     * <p><b>Default Behavior:</b> This method wraps {@link #getInputStream()} with 
+     * {@link Channels#newChannel(InputStream)} on the first call and reads from that 
+     * channel on every call, which copies the bytes through one intermediate heap 
+     * buffer per connection. Implementations that can read from the connection 
+     * directly should override it.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+     * while (httpConn.read(buf) != -1) {
+     *     buf.flip();
+     *     // Consume the bytes in buf...
+     *     buf.clear();
+     * }
+     * }</pre>
+     *
+     * @param dst the buffer into which bytes are to be transferred.
+     * @return the number of bytes read, possibly zero if {@code dst} has no space 
+     *         remaining, or {@code -1} if the end of the body has been reached.
+     * @throws IOException if an I/O error occurs while connecting or reading.
+     * @throws NullPointerException if {@code dst} is {@code null}.
+     *
+     * @see #transferTo(FileChannel, long)
+     * @see java.net.URLConnection#getInputStream()
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        Objects.requireNonNull(dst, "dst");
+        return bodyChannel().read(dst);
+    }
+
+    /* channel over getInputStream(), created once so that its copy buffer is reused */
+    private ReadableByteChannel bodyChannel;
+
+    private ReadableByteChannel bodyChannel() throws IOException {
+        if (bodyChannel == null) {
+            bodyChannel = Channels.newChannel(getInputStream());
+        }
+        return bodyChannel;
+    }
+
+    /**
+     * Transfers the remainder of the response body into the given file, starting at 
+     * the given file position. The body is consumed as if it had been read to the end 
+     * from {@link #getInputStream()}, so the connection remains eligible for reuse.
+     *
+     * <p>When the body is identity-encoded with a known {@code Content-Length}, an 
+     * implementation may move the bytes from the socket to the file with 
+     * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} or a direct 
+     * buffer, without copying them through the Java heap. This is the preferred way to 
+     * download large resources to disk.</p>
+     *
+     * <p><b>Default Behavior:</b> This method wraps {@link #getInputStream()} with 
+     * {@link Channels#newChannel(InputStream)}, the same channel as 
+     * {@link #read(ByteBuffer)} uses, and passes it to {@code target.transferFrom} 
+     * until the end of the body is reached. Implementations 
+     * that can hand the connection's channel to the file directly should override it.</p>
+     *
+     * <p><b>Usage Example:</b></p>
+     * <pre>{@code
+     * HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+     * try (FileChannel file = FileChannel.open(path, CREATE, WRITE)) {
+     *     long size = httpConn.transferTo(file, 0);
+     *     System.out.println("Downloaded " + size + " bytes");
+     * }
+     * }</pre>
+     *
+     * @param target the file to write the body to; it must be open for writing.
+     * @param position the file position at which to start writing, between {@code 0} 
+     *        and the current size of {@code target}, since 
+     *        {@code FileChannel.transferFrom} transfers nothing past the end of a file.
+     * @return the number of bytes written to {@code target}.
+     * @throws IOException if an I/O error occurs while connecting, reading the body or 
+     *         writing the file.
+     * @throws IllegalArgumentException if {@code position} is negative or greater than 
+     *         the size of {@code target}.
+     * @throws NullPointerException if {@code target} is {@code null}.
+     *
+     * @see #read(ByteBuffer)
+     */
+    public long transferTo(FileChannel target, long position) throws IOException {
+        Objects.requireNonNull(target, "target");
+        if (position < 0 || position > target.size()) {
+            throw new IllegalArgumentException("position " + position
+                    + " is outside the file of size " + target.size());
+        }
+        ReadableByteChannel src = bodyChannel();
+        long transferred = 0;
+        long n;
+        while ((n = target.transferFrom(src, position + transferred,
+                                        Long.MAX_VALUE - position - transferred)) > 0) {
+            transferred += n;
+        }
+        return transferred;
+    }
+
     /*
     * The response codes for HTTP, as of version 1.1.
     * These codes are used to indicate the result of an HTTP request.
@@ -1033,6 +6402,13 @@ public abstract class HttpURLConnection extends URLConnection {
      * <p>
      * The resource has not been modified since the last request. The client can use the cached version.
      * </p>
+     * <p>
+     * This is the response to a request made conditional with {@code If-None-Match} or 
+     * {@code If-Modified-Since}. Implementations that cache responses send these header 
+     * fields when revalidating a stored response, and on a 304 return the stored body.
+     * </p>
+     * @see #setConditionalHeaders(String, long)
+     * @see DiskResponseCache#revalidated(DiskResponseCache.Entry, HttpURLConnection)
      */
     public static final int HTTP_NOT_MODIFIED = 304;
 
@@ -1044,6 +6420,24 @@ public abstract class HttpURLConnection extends URLConnection {
      */
     public static final int HTTP_USE_PROXY = 305;
 
+    /**
+     * HTTP Status-Code 307: Temporary Redirect.
+     * <p>
+     * The resource resides temporarily under a different URI, and the request must be repeated there 
+     * with the same method and body.
+     * </p>
+     */
+    public static final int HTTP_TEMP_REDIRECT = 307;
+
+    /**
+     * HTTP Status-Code 308: Permanent Redirect.
+     * <p>
+     * The resource has been assigned a new permanent URI, and the request must be repeated there 
+     * with the same method and body.
+     * </p>
+     */
+    public static final int HTTP_PERM_REDIRECT = 308;
+
     /* 4XX: Client Error */
 
     /**
@@ -1174,6 +6568,16 @@ public abstract class HttpURLConnection extends URLConnection {
      */
     public static final int HTTP_UNSUPPORTED_TYPE = 415;
 
+    /**
+     * HTTP Status-Code 429: Too Many Requests.
+     * <p>
+     * The client has sent too many requests in a given amount of time. The response may include a 
+     * {@code Retry-After} header field saying how long to wait before making a new request.
+     * </p>
+     * @see #getRetryAfter()
+     */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     /* 5XX: Server Error */
 
     /**
@@ -1215,6 +6619,7 @@ public abstract class HttpURLConnection extends URLConnection {
      * <p>
      * The server is currently unable to handle the request due to temporary overloading or maintenance.
      * </p>
+     * @see RetryPolicy
      */
     public static final int HTTP_UNAVAILABLE = 503;
 
@@ -1223,6 +6628,7 @@ public abstract class HttpURLConnection extends URLConnection {
      * <p>
      * The server, while acting as a gateway or proxy, did not receive a timely response from the upstream server.
      * </p>
+     * @see RetryPolicy
      */
     public static final int HTTP_GATEWAY_TIMEOUT = 504;
 
@@ -1233,4 +6639,48 @@ public abstract class HttpURLConnection extends URLConnection {
      * </p>
      */
     public static final int HTTP_VERSION = 505;
+
+    /* Standard reason phrases, indexed by status code */
+    private static final String[] REASON_PHRASES = new String[HTTP_VERSION + 1];
+
+    static {
+        REASON_PHRASES[HTTP_OK] = "OK";
+        REASON_PHRASES[HTTP_CREATED] = "Created";
+        REASON_PHRASES[HTTP_ACCEPTED] = "Accepted";
+        REASON_PHRASES[HTTP_NOT_AUTHORITATIVE] = "Non-Authoritative Information";
+        REASON_PHRASES[HTTP_NO_CONTENT] = "No Content";
+        REASON_PHRASES[HTTP_RESET] = "Reset Content";
+        REASON_PHRASES[HTTP_PARTIAL] = "Partial Content";
+        REASON_PHRASES[HTTP_MULT_CHOICE] = "Multiple Choices";
+        REASON_PHRASES[HTTP_MOVED_PERM] = "Moved Permanently";
+        REASON_PHRASES[HTTP_MOVED_TEMP] = "Found";
+        REASON_PHRASES[HTTP_SEE_OTHER] = "See Other";
+        REASON_PHRASES[HTTP_NOT_MODIFIED] = "Not Modified";
+        REASON_PHRASES[HTTP_USE_PROXY] = "Use Proxy";
+        REASON_PHRASES[HTTP_TEMP_REDIRECT] = "Temporary Redirect";
+        REASON_PHRASES[HTTP_PERM_REDIRECT] = "Permanent Redirect";
+        REASON_PHRASES[HTTP_BAD_REQUEST] = "Bad Request";
+        REASON_PHRASES[HTTP_UNAUTHORIZED] = "Unauthorized";
+        REASON_PHRASES[HTTP_PAYMENT_REQUIRED] = "Payment Required";
+        REASON_PHRASES[HTTP_FORBIDDEN] = "Forbidden";
+        REASON_PHRASES[HTTP_NOT_FOUND] = "Not Found";
+        REASON_PHRASES[HTTP_BAD_METHOD] = "Method Not Allowed";
+        REASON_PHRASES[HTTP_NOT_ACCEPTABLE] = "Not Acceptable";
+        REASON_PHRASES[HTTP_PROXY_AUTH] = "Proxy Authentication Required";
+        REASON_PHRASES[HTTP_CLIENT_TIMEOUT] = "Request Timeout";
+        REASON_PHRASES[HTTP_CONFLICT] = "Conflict";
+        REASON_PHRASES[HTTP_GONE] = "Gone";
+        REASON_PHRASES[HTTP_LENGTH_REQUIRED] = "Length Required";
+        REASON_PHRASES[HTTP_PRECON_FAILED] = "Precondition Failed";
+        REASON_PHRASES[HTTP_ENTITY_TOO_LARGE] = "Payload Too Large";
+        REASON_PHRASES[HTTP_REQ_TOO_LONG] = "URI Too Long";
+        REASON_PHRASES[HTTP_UNSUPPORTED_TYPE] = "Unsupported Media Type";
+        REASON_PHRASES[HTTP_TOO_MANY_REQUESTS] = "Too Many Requests";
+        REASON_PHRASES[HTTP_INTERNAL_ERROR] = "Internal Server Error";
+        REASON_PHRASES[HTTP_NOT_IMPLEMENTED] = "Not Implemented";
+        REASON_PHRASES[HTTP_BAD_GATEWAY] = "Bad Gateway";
+        REASON_PHRASES[HTTP_UNAVAILABLE] = "Service Unavailable";
+        REASON_PHRASES[HTTP_GATEWAY_TIMEOUT] = "Gateway Timeout";
+        REASON_PHRASES[HTTP_VERSION] = "HTTP Version Not Supported";
+    }
 }
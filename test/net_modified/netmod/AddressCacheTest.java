@@ -0,0 +1,165 @@
+package netmod;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AddressCacheTest {
+    /* a resolver that counts its calls, can be made to fail, and can be held until released */
+    static final class Resolver implements HttpURLConnection.HostResolver {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean fail = new AtomicBoolean();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            calls.incrementAndGet();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            if (fail.get()) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] {InetAddress.getByAddress(host, new byte[] {10, 0, 0, 1})};
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        caching();
+        stampede();
+        sharedFailure();
+        refreshJoinsLookup();
+        rejectedRefresh();
+        refreshBackoff();
+    }
+
+    static void caching() throws Exception {
+        Resolver r = new Resolver();
+        HttpURLConnection.AddressCache cache = new HttpURLConnection.AddressCache(r, Duration.ofMinutes(1), Duration.ofMinutes(1), Runnable::run);
+        Check.equal("10.0.0.1", cache.resolve("a").get(0).getHostAddress(), "resolved address");
+        cache.resolve("a");
+        Check.equal(1, r.calls.get(), "second lookup is cached");
+        cache.invalidate("a");
+        cache.resolve("a");
+        Check.equal(2, r.calls.get(), "invalidate forgets the host");
+        r.fail.set(true);
+        Check.fails(UnknownHostException.class, () -> cache.resolve("b"), "unknown host");
+        Check.fails(UnknownHostException.class, () -> cache.resolve("b"), "cached failure");
+        Check.equal(3, r.calls.get(), "failures are cached");
+    }
+
+    static void stampede() throws Exception {
+        Resolver r = new Resolver();
+        r.gate = new CountDownLatch(1);
+        HttpURLConnection.AddressCache cache = new HttpURLConnection.AddressCache(r, Duration.ofMinutes(1), Duration.ZERO, Runnable::run);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<List<InetAddress>>> lookups = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                lookups.add(pool.submit(() -> cache.resolve("cold")));
+            }
+            Thread.sleep(200);
+            r.gate.countDown();
+            for (Future<List<InetAddress>> f : lookups) {
+                Check.equal(1, f.get(5, TimeUnit.SECONDS).size(), "every waiter gets the addresses");
+            }
+            Check.equal(1, r.calls.get(), "one resolver call for 16 concurrent cold lookups");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static void sharedFailure() throws Exception {
+        Resolver r = new Resolver();
+        r.fail.set(true);
+        r.gate = new CountDownLatch(1);
+        HttpURLConnection.AddressCache cache = new HttpURLConnection.AddressCache(r, Duration.ofMinutes(1), Duration.ZERO, Runnable::run);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<InetAddress>>> lookups = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                lookups.add(pool.submit(() -> cache.resolve("missing")));
+            }
+            Thread.sleep(200);
+            r.gate.countDown();
+            for (Future<List<InetAddress>> f : lookups) {
+                Check.fails(UnknownHostException.class, () -> {
+                    try {
+                        f.get(5, TimeUnit.SECONDS);
+                    } catch (java.util.concurrent.ExecutionException e) {
+                        throw (Exception) e.getCause();
+                    }
+                }, "every waiter gets the failure");
+            }
+            Check.equal(1, r.calls.get(), "one resolver call for 8 concurrent failing lookups");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static void refreshJoinsLookup() throws Exception {
+        Resolver r = new Resolver();
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+        HttpURLConnection.AddressCache cache = new HttpURLConnection.AddressCache(r, Duration.ofMillis(400), Duration.ZERO, refresher);
+        try {
+            cache.resolve("warm");
+            r.gate = new CountDownLatch(1);
+            Thread.sleep(320);
+            cache.resolve("warm");          // starts a refresh, which waits on the gate
+            Thread.sleep(150);              // the entry has now expired
+            Thread blocked = new Thread(() -> {
+                try {
+                    cache.resolve("warm");
+                } catch (UnknownHostException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            blocked.start();
+            Thread.sleep(100);
+            Check.isTrue(blocked.isAlive(), "expired lookup waits for the refresh in progress");
+            r.gate.countDown();
+            blocked.join(5000);
+            Check.equal(2, r.calls.get(), "the expired lookup shares the refresh");
+        } finally {
+            refresher.shutdownNow();
+        }
+    }
+
+    static void rejectedRefresh() throws Exception {
+        Resolver r = new Resolver();
+        HttpURLConnection.AddressCache cache = new HttpURLConnection.AddressCache(r, Duration.ofMillis(400), Duration.ZERO,
+                t -> { throw new RejectedExecutionException("full"); });
+        cache.resolve("x");
+        Thread.sleep(320);
+        Check.equal(1, cache.resolve("x").size(), "rejected refresh still returns the cached addresses");
+        Check.equal(1, cache.resolve("x").size(), "and a later lookup tries again");
+        Check.equal(1, r.calls.get(), "no resolver call while cached");
+    }
+
+    static void refreshBackoff() throws Exception {
+        Resolver r = new Resolver();
+        HttpURLConnection.AddressCache cache = new HttpURLConnection.AddressCache(r, Duration.ofMillis(1600), Duration.ZERO, Runnable::run);
+        cache.resolve("y");
+        Thread.sleep(1250);
+        r.fail.set(true);
+        for (int i = 0; i < 100; i++) {
+            Check.equal(1, cache.resolve("y").size(), "outage keeps serving the cached addresses");
+        }
+        Check.equal(2, r.calls.get(), "one failed refresh during the outage");
+        Thread.sleep(120);
+        cache.resolve("y");
+        Check.equal(3, r.calls.get(), "next refresh after the back-off");
+    }
+}
@@ -0,0 +1,66 @@
+package netmod;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BodyChannelTest {
+    public static void main(String[] args) throws Exception {
+        byte[] body = new byte[100_000];
+        new Random(1).nextBytes(body);
+        read(body);
+        transfer(body);
+        arguments();
+    }
+
+    static void read(byte[] body) throws Exception {
+        TestConnection conn = new TestConnection().body(new ByteArrayInputStream(body));
+        Check.fails(NullPointerException.class, () -> conn.read(null), "null buffer");
+        ByteBuffer all = ByteBuffer.allocate(body.length);
+        ByteBuffer buf = ByteBuffer.allocateDirect(1000);
+        int n;
+        while ((n = conn.read(buf)) != -1) {
+            Check.isTrue(n > 0, "a read into an empty buffer makes progress");
+            buf.flip();
+            all.put(buf);
+            buf.clear();
+        }
+        Check.isTrue(Arrays.equals(body, all.array()), "body read through direct buffers");
+        Check.equal(0, conn.read(ByteBuffer.allocate(0)), "read into a full buffer");
+    }
+
+    static void transfer(byte[] body) throws Exception {
+        Path file = Files.createTempFile("body", ".bin");
+        try (FileChannel target = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            target.write(ByteBuffer.wrap(new byte[] {'x', 'y'}));
+            TestConnection conn = new TestConnection().body(new ByteArrayInputStream(body));
+            Check.equal((long) body.length, conn.transferTo(target, 2), "bytes transferred");
+            Check.equal(2L + body.length, target.size(), "file size");
+            byte[] written = Files.readAllBytes(file);
+            Check.equal("xy", new String(written, 0, 2, StandardCharsets.US_ASCII), "bytes before position are kept");
+            Check.isTrue(Arrays.equals(body, Arrays.copyOfRange(written, 2, written.length)), "body written at position");
+            Check.equal(0L, conn.transferTo(target, target.size()), "nothing left after the end of the body");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static void arguments() throws Exception {
+        Path file = Files.createTempFile("body", ".bin");
+        try (FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            TestConnection conn = new TestConnection().body(new ByteArrayInputStream(new byte[10]));
+            Check.fails(NullPointerException.class, () -> conn.transferTo(null, 0), "null target");
+            Check.fails(IllegalArgumentException.class, () -> conn.transferTo(target, -1), "negative position");
+            Check.fails(IllegalArgumentException.class, () -> conn.transferTo(target, 1), "position past end of file");
+            Check.equal(10L, conn.transferTo(target, 0), "rejected calls consume nothing");
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package netmod;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class BufferPoolTest {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("debug")) {
+            debug();
+            return;
+        }
+        sizeClasses();
+        reuse();
+        shared();
+        forkDebug();
+    }
+
+    static void sizeClasses() {
+        Check.equal(4096, HttpURLConnection.BufferPool.acquire(0).capacity(), "empty request");
+        Check.equal(4096, HttpURLConnection.BufferPool.acquire(4096).capacity(), "4 KB class");
+        Check.equal(16384, HttpURLConnection.BufferPool.acquire(4097).capacity(), "16 KB class");
+        Check.equal(65536, HttpURLConnection.BufferPool.acquire(20000).capacity(), "64 KB class");
+        ByteBuffer big = HttpURLConnection.BufferPool.acquire(100_000);
+        Check.equal(100_000, big.capacity(), "larger than any class");
+        Check.isTrue(big.isDirect(), "direct buffer");
+        Check.equal(-1, HttpURLConnection.BufferPool.outstanding(), "no tracking outside debug mode");
+        Check.fails(IllegalArgumentException.class, () -> HttpURLConnection.BufferPool.acquire(-1), "negative capacity");
+        Check.fails(NullPointerException.class, () -> HttpURLConnection.BufferPool.release(null), "null buffer");
+    }
+
+    static void reuse() {
+        ByteBuffer first = HttpURLConnection.BufferPool.acquire(1000);
+        first.put((byte) 1).limit(10);
+        HttpURLConnection.BufferPool.release(first);
+        long hits = HttpURLConnection.BufferPool.hits();
+        ByteBuffer again = HttpURLConnection.BufferPool.acquire(2000);
+        Check.isTrue(again == first, "released buffer handed out again");
+        Check.equal(0, again.position(), "cleared position");
+        Check.equal(again.capacity(), again.limit(), "cleared limit");
+        Check.equal(hits + 1, HttpURLConnection.BufferPool.hits(), "counted as a hit");
+
+        long misses = HttpURLConnection.BufferPool.misses();
+        HttpURLConnection.BufferPool.release(ByteBuffer.allocate(4096));
+        HttpURLConnection.BufferPool.release(ByteBuffer.allocateDirect(5000));
+        HttpURLConnection.BufferPool.acquire(4096);
+        Check.equal(misses + 1, HttpURLConnection.BufferPool.misses(), "heap and odd-sized buffers are not pooled");
+    }
+
+    static void shared() throws Exception {
+        // more than a thread caches: the rest go to the shared pool for other threads
+        List<ByteBuffer> bufs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bufs.add(HttpURLConnection.BufferPool.acquire(16384));
+        }
+        bufs.forEach(HttpURLConnection.BufferPool::release);
+        long hits = HttpURLConnection.BufferPool.hits();
+        List<ByteBuffer> taken = CompletableFuture.supplyAsync(() -> {
+            List<ByteBuffer> l = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                l.add(HttpURLConnection.BufferPool.acquire(16384));
+            }
+            return l;
+        }, r -> new Thread(r).start()).get();
+        Check.equal(hits + 6, HttpURLConnection.BufferPool.hits(), "another thread is served from the shared pool");
+        for (ByteBuffer b : taken) {
+            Check.isTrue(bufs.stream().anyMatch(x -> x == b), "shared buffer came from the releasing thread");
+        }
+    }
+
+    static void forkDebug() throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process p = new ProcessBuilder(java, "-Dhttp.bufferPool.debug=true",
+                "-cp", System.getProperty("java.class.path"), BufferPoolTest.class.getName(), "debug")
+                .inheritIO().start();
+        Check.equal(0, p.waitFor(), "debug mode checks");
+    }
+
+    static void debug() {
+        ByteBuffer a = HttpURLConnection.BufferPool.acquire(10);
+        ByteBuffer b = HttpURLConnection.BufferPool.acquire(10);
+        Check.equal(2, HttpURLConnection.BufferPool.outstanding(), "outstanding buffers");
+        HttpURLConnection.BufferPool.release(a);
+        Check.equal(1, HttpURLConnection.BufferPool.outstanding(), "one released");
+        Check.fails(IllegalArgumentException.class, () -> HttpURLConnection.BufferPool.release(a), "double release");
+        Check.fails(IllegalArgumentException.class,
+                () -> HttpURLConnection.BufferPool.release(ByteBuffer.allocateDirect(4096)), "foreign buffer");
+        HttpURLConnection.BufferPool.release(b);
+        Check.equal(0, HttpURLConnection.BufferPool.outstanding(), "all released");
+    }
+}
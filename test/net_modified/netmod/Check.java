@@ -0,0 +1,41 @@
+package netmod;
+
+import java.util.Objects;
+
+/**
+ * Assertions for the tests, which run without a test framework.
+ */
+final class Check {
+
+    /** An action that is expected to throw. */
+    interface Action {
+        void run() throws Exception;
+    }
+
+    private Check() {
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    static void isTrue(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    static <T extends Throwable> T fails(Class<T> type, Action action, String what) {
+        try {
+            action.run();
+        } catch (Throwable t) {
+            if (type.isInstance(t)) {
+                return type.cast(t);
+            }
+            throw new AssertionError(what + ": expected " + type.getName() + " but got " + t, t);
+        }
+        throw new AssertionError(what + ": expected " + type.getName());
+    }
+}
@@ -0,0 +1,95 @@
+package netmod;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ChunkReaderTest {
+    static final String BODY = "5;ext=1\r\nhello\r\n1A\r\nabcdefghijklmnopqrstuvwxyz\r\n"
+            + "0\r\nX-Sum: 42\r\nX-Other:  b \r\n\r\nNEXT";
+
+    public static void main(String[] args) throws Exception {
+        incremental();
+        smallDestination();
+        malformed();
+        trailerLimit();
+    }
+
+    static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    static String text(ByteBuffer buf) {
+        return StandardCharsets.ISO_8859_1.decode(buf).toString();
+    }
+
+    /* feeds the body step bytes at a time, as they might arrive from a socket */
+    static void incremental() throws Exception {
+        byte[] enc = BODY.getBytes(StandardCharsets.ISO_8859_1);
+        for (int step = 1; step <= enc.length; step++) {
+            HttpURLConnection.ChunkReader reader = new HttpURLConnection.ChunkReader();
+            ByteBuffer src = ByteBuffer.allocate(enc.length).flip();
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            int fed = 0;
+            while (!reader.isDone()) {
+                Check.isTrue(fed < enc.length, "done before the input ran out, step " + step);
+                src.compact();
+                int k = Math.min(step, enc.length - fed);
+                src.put(enc, fed, k).flip();
+                fed += k;
+                reader.decode(src, dst);
+            }
+            dst.flip();
+            Check.equal("helloabcdefghijklmnopqrstuvwxyz", text(dst), "payload, step " + step);
+            Check.equal(2, reader.trailerCount(), "trailer fields, step " + step);
+            Check.equal("X-Sum", reader.getTrailerKey(0), "first trailer name");
+            Check.equal("42", reader.getTrailerValue(0), "first trailer value");
+            Check.equal("X-Other", reader.getTrailerKey(1), "second trailer name");
+            Check.equal("b", reader.getTrailerValue(1), "value is trimmed");
+            Check.equal(null, reader.getTrailerKey(2), "no third trailer");
+            Check.equal(null, reader.getTrailerValue(-1), "negative index");
+            String rest = text(src) + BODY.substring(fed);
+            Check.equal("NEXT", rest, "bytes after the body are left, step " + step);
+            Check.equal(-1, reader.decode(bytes("more"), dst), "decode after the end");
+        }
+    }
+
+    static void smallDestination() throws Exception {
+        HttpURLConnection.ChunkReader reader = new HttpURLConnection.ChunkReader();
+        ByteBuffer src = bytes(BODY);
+        ByteBuffer dst = ByteBuffer.allocate(4);
+        StringBuilder out = new StringBuilder();
+        while (!reader.isDone()) {
+            int n = reader.decode(src, dst);
+            Check.isTrue(n <= 4, "never more than the destination holds");
+            dst.flip();
+            out.append(text(dst));
+            dst.clear();
+        }
+        Check.equal("helloabcdefghijklmnopqrstuvwxyz", out.toString(), "payload through a 4-byte buffer");
+    }
+
+    static void malformed() {
+        for (String s : new String[] {"zz\r\n", "\r\n", "5\r\nhelloXY", "5\nhello\r\n", "3\r\nabc\r\n0\r\nnocolon\r\n\r\n",
+                                      "3\r\nabc\r\n0\r\n: empty name\r\n\r\n", "fffffffffffffffff\r\n"}) {
+            HttpURLConnection.ChunkReader reader = new HttpURLConnection.ChunkReader();
+            Check.fails(IOException.class, () -> reader.decode(bytes(s), ByteBuffer.allocate(100)), "malformed " + s.replace("\r\n", "\\r\\n"));
+        }
+    }
+
+    static void trailerLimit() throws Exception {
+        HttpURLConnection.ChunkReader reader = new HttpURLConnection.ChunkReader();
+        reader.decode(bytes("0\r\n"), ByteBuffer.allocate(0));
+        int fields = 0;
+        try {
+            for (; fields < 10_000; fields++) {
+                reader.decode(bytes("X: y\r\n"), ByteBuffer.allocate(0));
+            }
+        } catch (IOException e) {
+            Check.isTrue(fields * 6 <= 8192 && fields * 6 > 8192 - 6, "stopped at the 8 KB limit after " + fields + " fields");
+            Check.equal(fields, reader.trailerCount(), "fields kept until the limit");
+            return;
+        }
+        throw new AssertionError("an endless trailer section was accepted");
+    }
+}
@@ -0,0 +1,151 @@
+package netmod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ChunkSizerTest {
+    static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public static void main(String[] args) throws Exception {
+        adapts();
+        payloadFitsChunk();
+        writer();
+        setter();
+    }
+
+    static void adapts() {
+        List<Integer> sizes = new ArrayList<>();
+        HttpURLConnection.ChunkSizer sizer = new HttpURLConnection.ChunkSizer(64, 4096, sizes::add);
+        Check.equal(64, sizer.chunkSize(), "starts at the minimum");
+
+        for (int i = 0; i < 10; i++) {
+            sizer.record(sizer.payloadSize(), FAST, FAST);
+        }
+        Check.equal(List.of(128, 256, 512, 1024, 2048, 4096), sizes, "doubles up to the maximum");
+
+        sizes.clear();
+        sizer.record(10, FAST, FAST);
+        Check.equal(4096, sizer.chunkSize(), "a partly filled chunk does not change the size");
+        sizer.record(sizer.payloadSize(), SLOW, FAST);
+        Check.equal(2048, sizer.chunkSize(), "slow supply halves the size");
+        sizer.record(sizer.payloadSize(), FAST, SLOW);
+        Check.equal(1024, sizer.chunkSize(), "slow drain halves the size");
+        for (int i = 0; i < 10; i++) {
+            sizer.record(sizer.payloadSize(), SLOW, SLOW);
+        }
+        Check.equal(64, sizer.chunkSize(), "never below the minimum");
+        Check.equal(List.of(2048, 1024, 512, 256, 128, 64), sizes, "listener sees each change once");
+
+        HttpURLConnection.ChunkSizer quiet = new HttpURLConnection.ChunkSizer(6, 7, null);
+        quiet.record(quiet.payloadSize(), FAST, FAST);
+        Check.equal(7, quiet.chunkSize(), "doubling is capped at the maximum");
+
+        Check.fails(IllegalArgumentException.class, () -> new HttpURLConnection.ChunkSizer(5, 100, null), "minimum too small");
+        Check.fails(IllegalArgumentException.class, () -> new HttpURLConnection.ChunkSizer(100, 99, null), "maximum below minimum");
+    }
+
+    static void payloadFitsChunk() {
+        for (int size = 6; size <= 1 << 20; size++) {
+            HttpURLConnection.ChunkSizer sizer = new HttpURLConnection.ChunkSizer(size, size, null);
+            int payload = sizer.payloadSize();
+            int framed = Integer.toHexString(payload).length() + 2 + payload + 2;
+            Check.isTrue(framed <= size && framed >= size - 1, "payload " + payload + " for chunk size " + size);
+        }
+    }
+
+    /* a blocking gathering channel that appends to a byte array */
+    static GatheringByteChannel sink(ByteArrayOutputStream out) {
+        WritableByteChannel ch = Channels.newChannel(out);
+        return new GatheringByteChannel() {
+            @Override
+            public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+                long n = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    n += ch.write(srcs[i]);
+                }
+                return n;
+            }
+
+            @Override
+            public long write(ByteBuffer[] srcs) throws IOException {
+                return write(srcs, 0, srcs.length);
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return ch.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    static void writer() throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        HttpURLConnection.ChunkSizer sizer = new HttpURLConnection.ChunkSizer(64, 4096, sizes::add);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpURLConnection.ChunkWriter writer = new HttpURLConnection.ChunkWriter(sink(out), sizer);
+        ByteBuffer data = ByteBuffer.wrap(new byte[100_000]);
+        writer.write(data);
+        writer.finish();
+        Check.equal(data.limit(), data.position(), "data consumed");
+        Check.isTrue(sizes.contains(4096), "a fast writer reaches the largest chunk size: " + sizes);
+
+        // walk the chunks: every one fits the bounds, starting from the smallest
+        String enc = out.toString(StandardCharsets.ISO_8859_1);
+        int p = 0;
+        int total = 0;
+        int first = -1;
+        while (true) {
+            int eol = enc.indexOf("\r\n", p);
+            int len = Integer.parseInt(enc.substring(p, eol), 16);
+            int framed = eol - p + 2 + len + 2;
+            if (len == 0) {
+                break;
+            }
+            if (first < 0) {
+                first = framed;
+            }
+            Check.isTrue(framed <= 4096, "chunk of " + framed + " bytes");
+            total += len;
+            p = eol + 2 + len + 2;
+        }
+        Check.equal(64, first, "first chunk at the smallest size");
+        Check.equal(100_000, total, "payload bytes");
+    }
+
+    static void setter() throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.setChunkedStreamingMode(64, 4096);
+        Check.equal(64, conn.minChunkLength, "minimum recorded");
+        Check.equal(4096, conn.chunkLength, "maximum recorded");
+
+        Check.fails(IllegalArgumentException.class, () -> new TestConnection().setChunkedStreamingMode(5, 4096), "minimum too small");
+        Check.fails(IllegalArgumentException.class, () -> new TestConnection().setChunkedStreamingMode(64, 63), "maximum below minimum");
+
+        TestConnection fixed = new TestConnection();
+        // setFixedLengthStreamingMode is left to implementations, so set its field directly
+        fixed.fixedContentLengthLong = 5;
+        Check.fails(IllegalStateException.class, () -> fixed.setChunkedStreamingMode(64, 4096), "after fixed-length mode");
+
+        TestConnection connected = new TestConnection();
+        connected.connect();
+        Check.fails(IllegalStateException.class, () -> connected.setChunkedStreamingMode(64, 4096), "after connect");
+    }
+}
@@ -0,0 +1,119 @@
+package netmod;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class ChunkWriterTest {
+    public static void main(String[] args) throws Exception {
+        framing();
+        partialWrites();
+        allocationFree();
+        Check.fails(NullPointerException.class, () -> new HttpURLConnection.ChunkWriter(null), "null channel");
+    }
+
+    /*
+     * A blocking gathering channel that accepts at most limit bytes per call, into
+     * out if it is not null, without allocating.
+     */
+    static final class Sink implements GatheringByteChannel {
+        final ByteArrayOutputStream out;
+        final int limit;
+        int calls;
+
+        Sink(ByteArrayOutputStream out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            calls++;
+            long n = 0;
+            for (int i = offset; i < offset + length && n < limit; i++) {
+                while (srcs[i].hasRemaining() && n < limit) {
+                    byte b = srcs[i].get();
+                    if (out != null) {
+                        out.write(b);
+                    }
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static String encode(int limit, String... chunks) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpURLConnection.ChunkWriter writer = new HttpURLConnection.ChunkWriter(new Sink(out, limit));
+        for (String c : chunks) {
+            ByteBuffer data = ByteBuffer.wrap(c.getBytes(StandardCharsets.ISO_8859_1));
+            writer.write(data);
+            Check.equal(data.limit(), data.position(), "chunk consumed");
+        }
+        writer.finish();
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    static void framing() throws Exception {
+        Check.equal("5\r\nhello\r\n0\r\n\r\n", encode(Integer.MAX_VALUE, "hello"), "one chunk");
+        Check.equal("0\r\n\r\n", encode(Integer.MAX_VALUE, ""), "an empty buffer sends no chunk");
+        String big = "x".repeat(300);
+        Check.equal("12c\r\n" + big + "\r\n1\r\ny\r\n0\r\n\r\n", encode(Integer.MAX_VALUE, big, "", "y"), "hexadecimal size");
+
+        // the decoder gives back what was written
+        String enc = encode(Integer.MAX_VALUE, "abc", big, "def");
+        HttpURLConnection.ChunkReader reader = new HttpURLConnection.ChunkReader();
+        ByteBuffer dst = ByteBuffer.allocate(1000);
+        reader.decode(ByteBuffer.wrap(enc.getBytes(StandardCharsets.ISO_8859_1)), dst);
+        Check.isTrue(reader.isDone(), "decoded to the end");
+        Check.equal("abc" + big + "def", new String(dst.array(), 0, dst.position(), StandardCharsets.ISO_8859_1), "round trip");
+    }
+
+    static void partialWrites() throws Exception {
+        String big = "y".repeat(300);
+        Check.equal("5\r\nhello\r\n12c\r\n" + big + "\r\n0\r\n\r\n", encode(3, "hello", big), "channel taking 3 bytes per write");
+        Check.equal("1\r\nz\r\n0\r\n\r\n", encode(1, "z"), "channel taking 1 byte per write");
+    }
+
+    static void allocationFree() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Sink sink = new Sink(null, Integer.MAX_VALUE);
+        HttpURLConnection.ChunkWriter writer = new HttpURLConnection.ChunkWriter(sink);
+        ByteBuffer data = ByteBuffer.allocateDirect(8192);
+        for (int i = 0; i < 20_000; i++) {
+            data.clear();
+            writer.write(data);
+        }
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 10_000; i++) {
+            data.clear();
+            writer.write(data);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        Check.isTrue(allocated < 10_000, "10000 chunks allocated " + allocated + " bytes");
+        Check.equal(30_000, sink.calls, "one gathering write per chunk");
+    }
+}
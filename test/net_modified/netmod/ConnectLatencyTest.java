@@ -0,0 +1,84 @@
+package netmod;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConnectLatencyTest {
+    public static void main(String[] args) throws Exception {
+        pendingLosers();
+        bounded();
+    }
+
+    static InetAddress loopback(int a, int b) throws Exception {
+        return InetAddress.getByAddress(new byte[] {127, 0, (byte) a, (byte) b});
+    }
+
+    /* a listener that never accepts, with its backlog full, so that new connects stay pending */
+    static ServerSocket stalled(InetAddress addr, int port, List<SocketChannel> fillers) throws Exception {
+        ServerSocket ss = new ServerSocket(port, 1, addr);
+        for (int i = 0; i < 4; i++) {
+            SocketChannel ch = SocketChannel.open();
+            ch.configureBlocking(false);
+            ch.connect(new InetSocketAddress(addr, ss.getLocalPort()));
+            fillers.add(ch);
+        }
+        Thread.sleep(100);
+        return ss;
+    }
+
+    static void pendingLosers() throws Exception {
+        InetAddress slow = loopback(0, 1);
+        InetAddress late = loopback(0, 3);
+        InetAddress fast = loopback(0, 2);
+        List<SocketChannel> fillers = new ArrayList<>();
+        try (ServerSocket s1 = stalled(slow, 0, fillers);
+             ServerSocket s3 = stalled(late, s1.getLocalPort(), fillers);
+             ServerSocket s2 = new ServerSocket(s1.getLocalPort(), 50, fast)) {
+            long start = System.nanoTime();
+            try (SocketChannel ch = HttpURLConnection.connectFastest(List.of(slow, late, fast), s1.getLocalPort(),
+                                                                     5000, Duration.ofMillis(200))) {
+                Check.equal(new InetSocketAddress(fast, s1.getLocalPort()), ch.getRemoteAddress(), "the accepting address wins");
+            }
+            long took = System.nanoTime() - start;
+            long fastLatency = HttpURLConnection.getConnectLatency(fast);
+            long slowLatency = HttpURLConnection.getConnectLatency(slow);
+            long lateLatency = HttpURLConnection.getConnectLatency(late);
+            Check.isTrue(fastLatency >= 0 && fastLatency < 150_000_000L, "winner measured from its own start: " + fastLatency);
+            Check.isTrue(slowLatency >= 350_000_000L && slowLatency <= took, "first loser pending for the whole race: " + slowLatency);
+            Check.isTrue(lateLatency >= 150_000_000L && lateLatency < 350_000_000L, "second loser measured from its own start: " + lateLatency);
+        } finally {
+            for (SocketChannel ch : fillers) {
+                ch.close();
+            }
+        }
+    }
+
+    static void bounded() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 200, InetAddress.getByName("0.0.0.0"))) {
+            Thread acceptor = new Thread(() -> {
+                while (true) {
+                    try (Socket s = server.accept()) {
+                        // closed at once
+                    } catch (Exception e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            int n = 1100;
+            for (int i = 0; i < n; i++) {
+                InetAddress addr = loopback(10 + i / 250, 1 + i % 250);
+                HttpURLConnection.connectFastest(List.of(addr), server.getLocalPort(), 5000, Duration.ofMillis(200)).close();
+            }
+            Check.equal(-1L, HttpURLConnection.getConnectLatency(loopback(10, 1)), "least recently used address is dropped");
+            Check.isTrue(HttpURLConnection.getConnectLatency(loopback(10 + (n - 1) / 250, 1 + (n - 1) % 250)) >= 0, "recent address is kept");
+        }
+    }
+}
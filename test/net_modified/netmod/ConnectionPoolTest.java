@@ -0,0 +1,127 @@
+package netmod;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionPoolTest {
+    static final AtomicInteger opened = new AtomicInteger();
+    static final AtomicInteger closed = new AtomicInteger();
+
+    static final class Conn implements Closeable {
+        boolean alive = true;
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    static final HttpURLConnection.ConnectionFactory<Conn> FACTORY = r -> {
+        opened.incrementAndGet();
+        return new Conn();
+    };
+
+    public static void main(String[] args) throws Exception {
+        routes();
+        reuseAndLimit();
+        evictionForgetsRoutes();
+        liveness();
+        socketLiveness();
+    }
+
+    static void routes() {
+        HttpURLConnection.Route a = new HttpURLConnection.Route("Example.COM", 80, null);
+        HttpURLConnection.Route b = new HttpURLConnection.Route("example.com", 80, Proxy.NO_PROXY);
+        Check.equal(a, b, "routes ignore host case and treat null as no proxy");
+        Check.equal(a.hashCode(), b.hashCode(), "equal routes hash alike");
+    }
+
+    static void reuseAndLimit() throws Exception {
+        HttpURLConnection.ConnectionPool<Conn> pool =
+                new HttpURLConnection.ConnectionPool<>(2, Duration.ofSeconds(30), c -> c.alive);
+        HttpURLConnection.Route r = new HttpURLConnection.Route("h", 80, null);
+        opened.set(0);
+        Conn c1 = pool.lease(r, FACTORY, 0);
+        pool.release(r, c1, true);
+        Check.isTrue(pool.lease(r, FACTORY, 0) == c1, "idle connection is reused");
+        Check.equal(1, opened.get(), "connections opened");
+        Conn c2 = pool.lease(r, FACTORY, 0);
+        long start = System.nanoTime();
+        Check.fails(SocketTimeoutException.class, () -> pool.lease(r, FACTORY, 100), "lease at the limit");
+        Check.isTrue(System.nanoTime() - start >= 90_000_000L, "lease waited for the timeout");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Conn> waiter = executor.submit(() -> pool.lease(r, FACTORY, 0));
+            Thread.sleep(50);
+            pool.release(r, c2, true);
+            Check.isTrue(waiter.get() == c2, "waiting lease gets the released connection");
+        } finally {
+            executor.shutdown();
+        }
+        pool.release(r, c1, false);
+        pool.release(r, c2, false);
+        Check.equal(0, pool.openCount(r), "open connections after closing both");
+        Check.equal(0, pool.routeCount(), "a route with no connections is forgotten");
+
+        Check.fails(IOException.class,
+                () -> pool.lease(r, x -> { throw new IOException("refused"); }, 0), "failed open");
+        Check.equal(0, pool.openCount(r), "a failed open gives back its place");
+        Check.equal(0, pool.routeCount(), "a failed open leaves no route behind");
+    }
+
+    static void evictionForgetsRoutes() throws Exception {
+        HttpURLConnection.ConnectionPool<Conn> pool =
+                new HttpURLConnection.ConnectionPool<>(4, Duration.ofMillis(100), c -> true);
+        closed.set(0);
+        for (int i = 0; i < 50; i++) {
+            HttpURLConnection.Route r = new HttpURLConnection.Route("host" + i, 80, null);
+            pool.release(r, pool.lease(r, FACTORY, 0), true);
+        }
+        Check.equal(50, pool.routeCount(), "routes with idle connections");
+        Thread.sleep(150);
+        Check.equal(50, pool.evictIdle(), "expired idle connections closed");
+        Check.equal(50, closed.get(), "connections closed by eviction");
+        Check.equal(0, pool.routeCount(), "routes left after eviction");
+    }
+
+    static void liveness() throws Exception {
+        HttpURLConnection.ConnectionPool<Conn> pool =
+                new HttpURLConnection.ConnectionPool<>(2, Duration.ofSeconds(30), c -> c.alive);
+        HttpURLConnection.Route r = new HttpURLConnection.Route("h", 80, null);
+        Conn c = pool.lease(r, FACTORY, 0);
+        pool.release(r, c, true);
+        c.alive = false;
+        Conn next = pool.lease(r, FACTORY, 0);
+        Check.isTrue(next != c, "a dead idle connection is not reused");
+        Check.equal(1, pool.openCount(r), "the dead connection was discarded");
+    }
+
+    static void socketLiveness() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                              server.getLocalPort());
+            try (SocketChannel channel = SocketChannel.open(address);
+                 Socket peer = server.accept()) {
+                Check.isTrue(HttpURLConnection.ConnectionPool.isAlive(channel), "an open idle socket is alive");
+                Check.isTrue(channel.isBlocking(), "the liveness check restores blocking mode");
+                peer.close();
+                Thread.sleep(100);
+                Check.isTrue(!HttpURLConnection.ConnectionPool.isAlive(channel),
+                        "a socket closed by the server is not alive");
+            }
+        }
+    }
+}
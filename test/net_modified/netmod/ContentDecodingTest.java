@@ -0,0 +1,131 @@
+package netmod;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+public class ContentDecodingTest {
+    public static void main(String[] args) throws Exception {
+        gzip();
+        multiMember();
+        headerFlags();
+        trailingData();
+        corrupt();
+        deflate();
+        setter();
+    }
+
+    /* counts single-byte reads, which the decoder should never make */
+    static final class CountingStream extends ByteArrayInputStream {
+        int singleReads;
+
+        CountingStream(byte[] b) {
+            super(b);
+        }
+
+        @Override
+        public synchronized int read() {
+            singleReads++;
+            return super.read();
+        }
+    }
+
+    static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) {
+            out.writeBytes(p);
+        }
+        return out.toByteArray();
+    }
+
+    static String decode(InputStream in, String encoding) throws IOException {
+        try (InputStream d = HttpURLConnection.decodeContent(in, encoding)) {
+            return new String(d.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static void gzip() throws Exception {
+        String text = "hello ".repeat(5000);
+        CountingStream in = new CountingStream(gzip(text));
+        Check.equal(text, decode(in, "gzip"), "gzip body");
+        Check.equal(0, in.singleReads, "header and trailer are read through the buffer");
+        Check.equal("x", decode(new ByteArrayInputStream(gzip("x")), " X-GZIP "), "x-gzip alias");
+        InputStream plain = new ByteArrayInputStream(new byte[0]);
+        Check.isTrue(HttpURLConnection.decodeContent(plain, "identity") == plain, "identity is not wrapped");
+    }
+
+    static void multiMember() throws Exception {
+        CountingStream in = new CountingStream(concat(gzip("first "), gzip(""), gzip("second")));
+        Check.equal("first second", decode(in, "gzip"), "members are concatenated");
+        Check.equal(0, in.singleReads, "no single-byte reads between members");
+    }
+
+    static void headerFlags() throws Exception {
+        byte[] data = "flagged".getBytes(StandardCharsets.UTF_8);
+        Deflater d = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        d.setInput(data);
+        d.finish();
+        byte[] deflated = new byte[256];
+        int n = d.deflate(deflated);
+        d.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        long c = crc.getValue();
+        byte[] header = {0x1f, (byte) 0x8b, 8, 4 | 8 | 16 | 2, 0, 0, 0, 0, 0, (byte) 255,
+                         3, 0, 'a', 'b', 'c', 'f', 'n', 0, 'c', 'm', 0, 0, 0};
+        byte[] trailer = {(byte) c, (byte) (c >> 8), (byte) (c >> 16), (byte) (c >> 24),
+                          (byte) data.length, 0, 0, 0};
+        byte[] body = concat(header, Arrays.copyOf(deflated, n), trailer);
+        Check.equal("flagged", decode(new ByteArrayInputStream(body), "gzip"), "FEXTRA, FNAME, FCOMMENT and FHCRC are skipped");
+    }
+
+    static void trailingData() throws Exception {
+        byte[] body = concat(gzip("text"), new byte[] {0, 0, 0});
+        Check.fails(ZipException.class, () -> decode(new ByteArrayInputStream(body), "gzip"), "garbage after the last member");
+        byte[] partial = concat(gzip("text"), new byte[] {0x1f, (byte) 0x8b});
+        Check.fails(EOFException.class, () -> decode(new ByteArrayInputStream(partial), "gzip"), "truncated second member");
+    }
+
+    static void corrupt() throws Exception {
+        byte[] body = gzip("checksummed");
+        body[body.length - 8] ^= 1;
+        Check.fails(ZipException.class, () -> decode(new ByteArrayInputStream(body), "gzip"), "bad CRC");
+        byte[] truncated = Arrays.copyOf(gzip("checksummed"), 15);
+        Check.fails(EOFException.class, () -> decode(new ByteArrayInputStream(truncated), "gzip"), "truncated member");
+        Check.fails(ZipException.class, () -> HttpURLConnection.decodeContent(new ByteArrayInputStream(new byte[20]), "gzip"), "not gzip");
+    }
+
+    static void deflate() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream z = new DeflaterOutputStream(out)) {
+            z.write("zlib body".getBytes(StandardCharsets.UTF_8));
+        }
+        Check.equal("zlib body", decode(new ByteArrayInputStream(out.toByteArray()), "deflate"), "deflate body");
+    }
+
+    static void setter() throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.setContentDecoding(false);
+        Check.equal(false, conn.getContentDecoding(), "decoding disabled");
+        conn.connect();
+        Check.fails(IllegalStateException.class, () -> conn.setContentDecoding(true), "setContentDecoding after connect");
+        Check.equal(false, conn.getContentDecoding(), "a rejected call leaves the flag unchanged");
+    }
+}
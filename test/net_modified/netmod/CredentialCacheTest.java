@@ -0,0 +1,83 @@
+package netmod;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.net.Authenticator;
+import java.util.Map;
+
+public class CredentialCacheTest {
+    public static void main(String[] args) throws Exception {
+        paths();
+        invalidate();
+        proxy();
+        authenticators();
+        released();
+    }
+
+    static String get(Authenticator auth, String path) {
+        return HttpURLConnection.getCachedCredentials(auth, "h:80", path, false);
+    }
+
+    static void paths() {
+        HttpURLConnection.cacheCredentials(null, "h:80", "/docs/a/index.html", false, "Basic", "docs", "Basic AAA");
+        Check.equal("Basic AAA", get(null, "/docs/a/b/c"), "below the challenged directory");
+        Check.equal("Basic AAA", get(null, "/docs/a/"), "the challenged directory");
+        Check.equal(null, get(null, "/docs/other"), "a sibling directory");
+        Check.equal(null, get(null, "/"), "the root");
+        Check.equal(null, HttpURLConnection.getCachedCredentials(null, "h:81", "/docs/a/x", false), "another port");
+
+        HttpURLConnection.cacheCredentials(null, "h:80", "/", false, "Basic", "root", "Basic ROOT");
+        Check.equal("Basic AAA", get(null, "/docs/a/x"), "the deepest directory wins");
+        Check.equal("Basic ROOT", get(null, "/z"), "the root covers the rest");
+        Check.equal("Basic ROOT", get(null, null), "no path is the root");
+    }
+
+    static void invalidate() {
+        HttpURLConnection.invalidateCredentials(null, "h:80", false, "BASIC", "docs");
+        Check.equal("Basic ROOT", get(null, "/docs/a/x"), "an invalidated space falls back to its parent");
+        HttpURLConnection.cacheCredentials(null, "h:80", "/docs/a/", false, "Basic", "docs", "Basic NEW");
+        Check.equal("Basic NEW", get(null, "/docs/a/x"), "credentials cached again after a new challenge");
+        Check.fails(NullPointerException.class,
+                () -> HttpURLConnection.cacheCredentials(null, "h:80", "/", false, "Basic", "r", null), "null authorization");
+        Check.fails(NullPointerException.class,
+                () -> HttpURLConnection.cacheCredentials(null, null, "/", false, "Basic", "r", "x"), "null host");
+    }
+
+    static void proxy() {
+        HttpURLConnection.cacheCredentials(null, "p:3128", "/ignored/", true, "Basic", "proxy", "Basic P");
+        Check.equal("Basic P", HttpURLConnection.getCachedCredentials(null, "p:3128", "/anything/deep", true), "proxy credentials for any path");
+        Check.equal(null, HttpURLConnection.getCachedCredentials(null, "p:3128", "/", false), "not sent to a server on the proxy host");
+        Check.equal(null, HttpURLConnection.getCachedCredentials(null, "h:80", "/", true), "server credentials are not proxy credentials");
+    }
+
+    static void authenticators() {
+        Authenticator a = new Authenticator() { };
+        Authenticator b = new Authenticator() { };
+        HttpURLConnection.cacheCredentials(a, "x:80", "/", false, "Basic", "r", "Basic A");
+        Check.equal("Basic A", HttpURLConnection.getCachedCredentials(a, "x:80", "/q", false), "same authenticator");
+        Check.equal(null, HttpURLConnection.getCachedCredentials(b, "x:80", "/q", false), "another authenticator");
+        Check.equal(null, HttpURLConnection.getCachedCredentials(null, "x:80", "/q", false), "the default authenticator");
+        HttpURLConnection.invalidateCredentials(b, "x:80", false, "Basic", "r");
+        Check.equal("Basic A", HttpURLConnection.getCachedCredentials(a, "x:80", "/q", false), "invalidation is per authenticator");
+    }
+
+    static void released() throws Exception {
+        Authenticator auth = new Authenticator() { };
+        HttpURLConnection.cacheCredentials(auth, "g:80", "/", false, "Basic", "r", "Basic G");
+        WeakReference<Authenticator> ref = new WeakReference<>(auth);
+        auth = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Check.equal(null, ref.get(), "the cache does not keep its authenticator reachable");
+
+        Field f = HttpURLConnection.class.getDeclaredField("credentialCache");
+        f.setAccessible(true);
+        Map<?, ?> cache = (Map<?, ?>) f.get(null);
+        Authenticator live = new Authenticator() { };
+        HttpURLConnection.cacheCredentials(live, "g:80", "/", false, "Basic", "r", "Basic L");
+        Check.isTrue(cache.size() <= 2, "collected authenticators expunged, " + cache.size() + " left");
+        Check.equal("Basic L", HttpURLConnection.getCachedCredentials(live, "g:80", "/", false), "live authenticator kept");
+    }
+}
@@ -0,0 +1,176 @@
+package netmod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class DiskResponseCacheTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            storeAndReopen(dir.resolve("a"));
+            revalidation(dir.resolve("b"));
+            variants(dir.resolve("c"));
+            refusals(dir.resolve("d"));
+            eviction(dir.resolve("e"));
+            indexGrowth(dir.resolve("f"));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    static void store(HttpURLConnection.DiskResponseCache cache, String url, TestConnection conn,
+                      String body) throws IOException {
+        CacheRequest q = cache.put(URI.create(url), conn);
+        Check.isTrue(q != null, "stored " + url);
+        try (OutputStream o = q.getBody()) {
+            o.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static String body(CacheResponse r) throws IOException {
+        return new String(r.getBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    static CacheResponse get(HttpURLConnection.DiskResponseCache cache, String url) throws IOException {
+        return cache.get(URI.create(url), "GET", Map.of());
+    }
+
+    static void storeAndReopen(Path dir) throws Exception {
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            store(cache, "http://h/a", new TestConnection().header("Cache-Control", "max-age=3600")
+                    .header("Content-Type", "text/plain"), "alpha");
+            CacheResponse r = get(cache, "http://h/a");
+            Check.equal("alpha", body(r), "body read back");
+            Check.equal(List.of("text/plain"), r.getHeaders().get("Content-Type"), "header read back");
+            Check.equal(List.of("HTTP/1.1 200"), r.getHeaders().get(null), "status line read back");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Check.equal(5L, ((HttpURLConnection.DiskResponseCache.Entry) r).transferBodyTo(Channels.newChannel(out)), "bytes transferred");
+            Check.equal("alpha", out.toString(StandardCharsets.UTF_8), "transferred body");
+            Check.equal(null, get(cache, "http://h/missing"), "miss");
+            Check.equal(null, cache.get(URI.create("http://h/a"), "POST", Map.of()), "POST lookup");
+            Check.equal(1L, cache.hitCount(), "hits");
+            Check.equal(1L, cache.missCount(), "misses");
+        }
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            Check.equal("alpha", body(get(cache, "http://h/a")), "entry survives reopening");
+        }
+        Files.write(dir.resolve("index"), new byte[] {1, 2, 3});
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            Check.equal(null, get(cache, "http://h/a"), "unreadable index empties the cache");
+            Check.equal(0L, cache.size(), "segments are deleted with the index");
+        }
+    }
+
+    static void revalidation(Path dir) throws Exception {
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            store(cache, "http://h/r", new TestConnection().header("Cache-Control", "no-cache")
+                    .header("ETag", "\"v1\"").header("Last-Modified", "Sun, 06 Nov 1994 08:49:37 GMT"), "cached");
+            Check.equal(null, get(cache, "http://h/r"), "no-cache is never served without revalidation");
+            HttpURLConnection.DiskResponseCache.Entry e = cache.lookup(URI.create("http://h/r"), Map.of());
+            Check.equal(false, e.isFresh(), "lookup returns the stale entry");
+            Check.equal("\"v1\"", e.getETag(), "ETag");
+            Check.equal(784111777000L, e.getLastModified(), "Last-Modified");
+            Check.fails(IllegalArgumentException.class, () -> cache.revalidated(e, new TestConnection()), "revalidated needs a 304");
+            HttpURLConnection.DiskResponseCache.Entry r = cache.revalidated(e,
+                    new TestConnection().code(HttpURLConnection.HTTP_NOT_MODIFIED).header("Cache-Control", "max-age=60"));
+            Check.equal(true, r.isFresh(), "fresh after a 304");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            r.transferBodyTo(Channels.newChannel(out));
+            Check.equal("cached", out.toString(StandardCharsets.UTF_8), "304 served from the stored body");
+            Check.equal("cached", body(get(cache, "http://h/r")), "get serves the revalidated entry");
+        }
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            Check.isTrue(get(cache, "http://h/r") != null, "new expiry is kept in the index");
+            store(cache, "http://h/s", new TestConnection().header("Cache-Control", "max-age=1").header("ETag", "\"s\""), "short");
+            Thread.sleep(1100);
+            Check.equal(null, get(cache, "http://h/s"), "stale entry is not served");
+            HttpURLConnection.DiskResponseCache.Entry e = cache.lookup(URI.create("http://h/s"), Map.of());
+            e = cache.revalidated(e, new TestConnection().code(HttpURLConnection.HTTP_NOT_MODIFIED));
+            Check.equal(true, e.isFresh(), "a 304 without a lifetime reuses the stored one");
+        }
+    }
+
+    static void variants(Path dir) throws Exception {
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            for (String lang : new String[] {"en", "fr"}) {
+                TestConnection conn = new TestConnection().header("Cache-Control", "max-age=3600")
+                        .header("Vary", "Accept-Language");
+                conn.setRequestProperty("Accept-Language", lang);
+                conn.connect();
+                store(cache, "http://h/v", conn, "body-" + lang);
+            }
+            URI uri = URI.create("http://h/v");
+            Check.equal("body-en", body(cache.get(uri, "GET", Map.of("accept-language", List.of("en")))), "en variant");
+            Check.equal("body-fr", body(cache.get(uri, "GET", Map.of("Accept-Language", List.of("fr")))), "fr variant");
+            Check.equal(null, cache.get(uri, "GET", Map.of("Accept-Language", List.of("de"))), "no de variant");
+            Check.equal(null, cache.get(uri, "GET", Map.of()), "no variant without the field");
+        }
+    }
+
+    static void refusals(Path dir) throws Exception {
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 1 << 20)) {
+            URI uri = URI.create("http://h/x");
+            Check.equal(null, cache.put(uri, new TestConnection().header("Cache-Control", "no-store")), "no-store");
+            Check.equal(null, cache.put(uri, new TestConnection().header("Cache-Control", "private, max-age=60")), "private");
+            Check.equal(null, cache.put(uri, new TestConnection().header("Cache-Control", "max-age=60").header("Vary", "*")), "Vary: *");
+            Check.equal(null, cache.put(uri, new TestConnection().header("Cache-Control", "max-age=60").method("POST")), "POST");
+            Check.equal(null, cache.put(uri, new TestConnection().header("Cache-Control", "max-age=60").code(500)), "500");
+            Check.equal(null, cache.put(uri, new TestConnection()), "no lifetime and no validator");
+            TestConnection auth = new TestConnection().header("Cache-Control", "max-age=60");
+            auth.setRequestProperty("Authorization", "Bearer t");
+            auth.connect();
+            Check.equal(null, cache.put(uri, auth), "request with Authorization");
+            CacheRequest q = cache.put(uri, new TestConnection().header("Cache-Control", "max-age=60"));
+            q.abort();
+            Check.equal(null, get(cache, "http://h/x"), "aborted body is not stored");
+            try (Stream<Path> files = Files.list(dir)) {
+                Check.equal(0L, files.filter(p -> p.toString().endsWith(".tmp")).count(), "temporary files are removed");
+            }
+        }
+    }
+
+    static void eviction(Path dir) throws Exception {
+        String body = "x".repeat(20_000);
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 256 * 1024)) {
+            for (int i = 0; i < 40; i++) {
+                store(cache, "http://h/e" + i, new TestConnection().header("Cache-Control", "max-age=3600"), body);
+            }
+            Check.isTrue(cache.size() <= 256 * 1024, "size bound: " + cache.size());
+            Check.equal(null, get(cache, "http://h/e0"), "oldest entry is evicted");
+            Check.equal(body, body(get(cache, "http://h/e39")), "newest entry is kept");
+            CacheRequest big = cache.put(URI.create("http://h/big"), new TestConnection().header("Cache-Control", "max-age=3600"));
+            try (OutputStream o = big.getBody()) {
+                o.write(new byte[100_000]);
+            }
+            Check.equal(null, get(cache, "http://h/big"), "body larger than a segment is dropped");
+        }
+    }
+
+    static void indexGrowth(Path dir) throws Exception {
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 64 << 20)) {
+            for (int i = 0; i < 3000; i++) {
+                store(cache, "http://h/g" + i, new TestConnection().header("Cache-Control", "max-age=3600"), "g" + i);
+            }
+            for (int i = 0; i < 3000; i++) {
+                Check.equal("g" + i, body(get(cache, "http://h/g" + i)), "entry after the index grew: " + i);
+            }
+        }
+        try (HttpURLConnection.DiskResponseCache cache = new HttpURLConnection.DiskResponseCache(dir, 64 << 20)) {
+            Check.equal("g2999", body(get(cache, "http://h/g2999")), "grown index survives reopening");
+        }
+    }
+}
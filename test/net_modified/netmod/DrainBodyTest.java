@@ -0,0 +1,120 @@
+package netmod;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class DrainBodyTest {
+    public static void main(String[] args) throws Exception {
+        limits();
+        slowAndFailing();
+        async();
+        saturated();
+    }
+
+    /* counts reads and close calls */
+    static final class Body extends ByteArrayInputStream {
+        int reads;
+        boolean closed;
+
+        Body(int length) {
+            super(new byte[length]);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            reads++;
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    static void limits() {
+        long drained = HttpURLConnection.getDrainedConnectionCount();
+        Body body = new Body(100);
+        Check.isTrue(HttpURLConnection.drainBody(body, 100, 1000), "body of exactly maxBytes");
+        Check.isTrue(!body.closed, "stream left open");
+        Check.isTrue(!HttpURLConnection.drainBody(new Body(101), 100, 1000), "one byte over maxBytes");
+        Check.isTrue(HttpURLConnection.drainBody(new Body(0), 0, 1000), "empty body");
+        Check.isTrue(!HttpURLConnection.drainBody(new Body(1), 0, 1000), "maxBytes of zero");
+        Check.equal(drained + 2, HttpURLConnection.getDrainedConnectionCount(), "only successful drains are counted");
+
+        Body big = new Body(100_000);
+        Check.isTrue(HttpURLConnection.drainBody(big, Long.MAX_VALUE, 1000), "unbounded size");
+        Check.isTrue(big.reads <= 100_000 / 8192 + 2, "reads of up to 8 KB, made " + big.reads);
+    }
+
+    static void slowAndFailing() {
+        InputStream slow = new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            }
+        };
+        long start = System.nanoTime();
+        Check.isTrue(!HttpURLConnection.drainBody(slow, Long.MAX_VALUE, 100), "slow body gives up");
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Check.isTrue(millis < 1000, "gave up after " + millis + " ms");
+
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("reset");
+            }
+        };
+        Check.isTrue(!HttpURLConnection.drainBody(broken, 100, 1000), "read error");
+    }
+
+    static void async() throws Exception {
+        long drained = HttpURLConnection.getDrainedConnectionCount();
+        Check.equal(true, HttpURLConnection.drainBodyAsync(new Body(5000), 65536, 1000).get(5, TimeUnit.SECONDS), "async drain");
+        Check.equal(false, HttpURLConnection.drainBodyAsync(new Body(5000), 10, 1000).get(5, TimeUnit.SECONDS), "async drain over the limit");
+        Check.equal(drained + 1, HttpURLConnection.getDrainedConnectionCount(), "async drains are counted");
+    }
+
+    static void saturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream blocked = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+        // 4 threads and a queue of 256: the next one is refused without blocking the caller
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 4 + 256; i++) {
+            futures.add(HttpURLConnection.drainBodyAsync(blocked, 10, 10_000));
+        }
+        CompletableFuture<Boolean> refused = HttpURLConnection.drainBodyAsync(new Body(1), 10, 1000);
+        Check.isTrue(refused.isDone(), "refused at once");
+        Check.equal(false, refused.get(), "saturated executor");
+        release.countDown();
+        for (CompletableFuture<Boolean> f : futures) {
+            Check.equal(true, f.get(10, TimeUnit.SECONDS), "queued drains complete");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package netmod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class FixedLengthBodyTest {
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("body", ".txt");
+        try {
+            Files.write(file, "0123456789".getBytes(StandardCharsets.US_ASCII));
+            try (FileChannel src = FileChannel.open(file, StandardOpenOption.READ)) {
+                arguments(src);
+                transfer(src);
+                truncated(src);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static void arguments(FileChannel src) throws Exception {
+        TestConnection conn = new TestConnection();
+        Check.fails(NullPointerException.class, () -> conn.setFixedLengthStreamingBody(null, 0, 1), "null source");
+        Check.fails(IllegalArgumentException.class, () -> conn.setFixedLengthStreamingBody(src, -1, 1), "negative position");
+        Check.fails(IllegalArgumentException.class, () -> conn.setFixedLengthStreamingBody(src, 0, -1), "negative count");
+        Check.fails(IllegalStateException.class, () -> conn.transferRequestBody(Channels.newChannel(new ByteArrayOutputStream())), "no body set");
+
+        TestConnection chunked = new TestConnection();
+        chunked.setChunkedStreamingMode(64, 1024);
+        Check.fails(IllegalStateException.class, () -> chunked.setFixedLengthStreamingBody(src, 0, 1), "after chunked mode");
+
+        TestConnection connected = new TestConnection();
+        connected.connect();
+        Check.fails(IllegalStateException.class, () -> connected.setFixedLengthStreamingBody(src, 0, 1), "after connect");
+    }
+
+    static void transfer(FileChannel src) throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.setFixedLengthStreamingBody(src, 2, 5);
+        Check.equal(5L, conn.fixedContentLengthLong, "content length");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Check.equal(5L, conn.transferRequestBody(Channels.newChannel(out)), "bytes sent");
+        Check.equal("23456", out.toString(StandardCharsets.US_ASCII), "body");
+        Check.equal(0L, src.position(), "file position is unchanged");
+    }
+
+    static void truncated(FileChannel src) throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.setFixedLengthStreamingBody(src, 8, 5);
+        Check.fails(EOFException.class, () -> conn.transferRequestBody(Channels.newChannel(new ByteArrayOutputStream())), "region past end of file");
+    }
+}
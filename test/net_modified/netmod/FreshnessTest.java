@@ -0,0 +1,45 @@
+package netmod;
+
+public class FreshnessTest {
+    static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+    public static void main(String[] args) throws Exception {
+        lifetime();
+        conditional();
+    }
+
+    static void lifetime() throws Exception {
+        Check.equal(-1L, new TestConnection().getFreshnessLifetime(), "no caching fields");
+        Check.equal(60_000L, new TestConnection().header("Cache-Control", "public, max-age=60").getFreshnessLifetime(), "max-age");
+        Check.equal(5000L, new TestConnection().header("Cache-Control", "Max-Age=\"5\"").getFreshnessLifetime(), "quoted, any case");
+        Check.equal(0L, new TestConnection().header("Cache-Control", "max-age=60, no-cache").getFreshnessLifetime(), "no-cache");
+        Check.equal(0L, new TestConnection().header("Cache-Control", "No-Store").getFreshnessLifetime(), "no-store");
+        Check.equal(0L, new TestConnection().header("Cache-Control", "max-age=soon").getFreshnessLifetime(), "invalid max-age");
+        Check.equal(Long.MAX_VALUE, new TestConnection().header("Cache-Control", "max-age=" + Long.MAX_VALUE).getFreshnessLifetime(), "no overflow");
+
+        Check.equal(60_000L, new TestConnection().header("Cache-Control", "max-age=60")
+                .header("Expires", "Sun, 06 Nov 1994 09:49:37 GMT").header("Date", DATE).getFreshnessLifetime(), "max-age wins over Expires");
+        Check.equal(60_000L, new TestConnection().header("Expires", "Sun, 06 Nov 1994 08:50:37 GMT")
+                .header("Date", DATE).getFreshnessLifetime(), "Expires less Date");
+        Check.equal(0L, new TestConnection().header("Expires", "0").header("Date", DATE).getFreshnessLifetime(), "invalid Expires is stale");
+        Check.equal(0L, new TestConnection().header("Expires", DATE).header("Date", "Sun, 06 Nov 1994 09:49:37 GMT")
+                .getFreshnessLifetime(), "Expires before Date");
+        Check.equal(-1L, new TestConnection().header("Cache-Control", "public").getFreshnessLifetime(), "no lifetime given");
+    }
+
+    static void conditional() throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.setConditionalHeaders("\"abc\"", 784111777000L);
+        Check.equal("\"abc\"", conn.getRequestProperty("If-None-Match"), "ETag");
+        Check.equal(DATE, conn.getRequestProperty("If-Modified-Since"), "Last-Modified");
+
+        TestConnection none = new TestConnection();
+        none.setConditionalHeaders(null, 0);
+        Check.equal(null, none.getRequestProperty("If-None-Match"), "no ETag");
+        Check.equal(null, none.getRequestProperty("If-Modified-Since"), "no Last-Modified");
+
+        TestConnection connected = new TestConnection();
+        connected.connect();
+        Check.fails(IllegalStateException.class, () -> connected.setConditionalHeaders("\"x\"", 0), "after connect");
+    }
+}
@@ -0,0 +1,70 @@
+package netmod;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class HeaderBlockTest {
+    public static void main(String[] args) throws Exception {
+        fields();
+        folding();
+        malformed();
+        connection();
+    }
+
+    static HttpURLConnection.HeaderBlock block(String text) throws IOException {
+        byte[] b = ("xx" + text).getBytes(StandardCharsets.ISO_8859_1);
+        return new HttpURLConnection.HeaderBlock(b, 2, b.length - 2);
+    }
+
+    static void fields() throws Exception {
+        HttpURLConnection.HeaderBlock h = block("HTTP/1.1 200 OK\r\n"
+                + "content-type:  text/plain \r\n"
+                + "X-Custom:a\n"
+                + "Set-Cookie: a=1\r\n"
+                + "Set-Cookie: b=2\r\n"
+                + "\r\n"
+                + "body: not a header\r\n");
+        Check.equal(5, h.fieldCount(), "field count stops at the empty line");
+        Check.equal(null, h.getKey(0), "status line key");
+        Check.equal("HTTP/1.1 200 OK", h.getValue(0), "status line");
+        Check.isTrue(h.getKey(1) == "Content-Type", "common names are shared instances");
+        Check.equal("text/plain", h.getValue(1), "value is trimmed");
+        Check.equal("X-Custom", h.getKey(2), "uncommon name");
+        Check.equal("a", h.getValue(2), "bare LF line end");
+        Check.isTrue(h.getValue(1) == h.getValue(1), "values are decoded once");
+        Check.equal("b=2", h.findValue("set-cookie"), "findValue returns the last field");
+        Check.equal(null, h.findValue("Body"), "nothing after the empty line");
+        Check.equal(null, h.getKey(5), "key past the end");
+        Check.equal(null, h.getValue(-1), "negative index");
+        Check.equal(0, block("").fieldCount(), "empty block");
+    }
+
+    static void folding() throws Exception {
+        HttpURLConnection.HeaderBlock h = block("HTTP/1.1 200 OK\r\n"
+                + "X-Folded: one  \r\n"
+                + "   two\r\n"
+                + "\tthree\r\n"
+                + "Age: 3\r\n\r\n");
+        Check.equal(3, h.fieldCount(), "continuation lines are not fields");
+        Check.equal("one two three", h.getValue(1), "folded value");
+        Check.equal("3", h.getValue(2), "field after a folded one");
+    }
+
+    static void malformed() {
+        Check.fails(IOException.class, () -> block("HTTP/1.1 200 OK\r\nNoColon\r\n"), "line without a colon");
+        Check.fails(IOException.class, () -> block("HTTP/1.1 200 OK\r\n: empty\r\n"), "empty name");
+        Check.fails(IOException.class, () -> block("HTTP/1.1 200 OK\r\n folded\r\n"), "leading continuation line");
+        Check.fails(IndexOutOfBoundsException.class, () -> new HttpURLConnection.HeaderBlock(new byte[4], 2, 3), "region outside the buffer");
+    }
+
+    static void connection() throws Exception {
+        TestConnection conn = new TestConnection();
+        Check.equal(null, conn.getHeaderFieldKey(1), "no header block");
+        Check.equal(null, conn.getHeaderField(0), "no header block");
+        conn.responseHeaders = block("HTTP/1.1 404 Not Found\r\nServer: test\r\n\r\n");
+        Check.equal("HTTP/1.1 404 Not Found", conn.getHeaderField(0), "status line through the connection");
+        Check.equal("Server", conn.getHeaderFieldKey(1), "key through the connection");
+        Check.equal("test", conn.getHeaderField(1), "value through the connection");
+        Check.equal(null, conn.getHeaderField(2), "past the last field");
+    }
+}
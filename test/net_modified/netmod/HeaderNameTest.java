@@ -0,0 +1,50 @@
+package netmod;
+
+import java.nio.charset.StandardCharsets;
+
+public class HeaderNameTest {
+    static final String[] COMMON = {
+        "Age", "Cache-Control", "Content-Length", "Content-Type", "Date", "ETag",
+        "Last-Modified", "Location", "Set-Cookie", "Transfer-Encoding", "Vary", "Via",
+        "WWW-Authenticate", "X-XSS-Protection"
+    };
+
+    public static void main(String[] args) {
+        common();
+        uncommon();
+        bounds();
+    }
+
+    static String name(String s) {
+        byte[] buf = ("  " + s + ": x").getBytes(StandardCharsets.ISO_8859_1);
+        return HttpURLConnection.headerName(buf, 2, s.length());
+    }
+
+    static void common() {
+        for (String h : COMMON) {
+            String shared = name(h);
+            Check.equal(h, shared, "canonical spelling");
+            Check.isTrue(shared == name(h.toLowerCase()), "same instance for lower case " + h);
+            Check.isTrue(shared == name(h.toUpperCase()), "same instance for upper case " + h);
+        }
+        Check.isTrue(name("ETAG") == name("etag"), "ETag is shared regardless of case");
+    }
+
+    static void uncommon() {
+        for (String s : new String[] {"X-Custom", "Content-Lengths", "Dat", "Datf", "Etag2"}) {
+            String a = name(s);
+            Check.equal(s, a, "decoded as written");
+            Check.isTrue(a != name(s), "not shared: " + s);
+        }
+        Check.equal("", name(""), "empty name");
+        byte[] latin1 = {'X', '-', (byte) 0xe9};
+        Check.equal("X-\u00e9", HttpURLConnection.headerName(latin1, 0, 3), "decoded as ISO-8859-1");
+    }
+
+    static void bounds() {
+        byte[] buf = "Date".getBytes(StandardCharsets.ISO_8859_1);
+        Check.fails(IndexOutOfBoundsException.class, () -> HttpURLConnection.headerName(buf, 1, 4), "past end");
+        Check.fails(IndexOutOfBoundsException.class, () -> HttpURLConnection.headerName(buf, -1, 2), "negative offset");
+        Check.fails(NullPointerException.class, () -> HttpURLConnection.headerName(null, 0, 0), "null buffer");
+    }
+}
@@ -0,0 +1,202 @@
+package netmod;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgePolicyTest {
+    /* a connection whose response takes a set time, then succeeds or fails */
+    static final class Scripted extends HttpURLConnection {
+        final long delayMillis;
+        final boolean fail;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger disconnects = new AtomicInteger();
+        volatile boolean waiting;
+        volatile boolean disconnectedWhileWaiting;
+
+        Scripted(URL url, long delayMillis, boolean fail) {
+            super(url);
+            this.delayMillis = delayMillis;
+            this.fail = fail;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            calls.incrementAndGet();
+            waiting = true;
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                waiting = false;
+            }
+            if (fail) {
+                throw new IOException("scripted failure");
+            }
+            return HTTP_OK;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnectedWhileWaiting |= waiting;
+            disconnects.incrementAndGet();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+    }
+
+    /* hands out the scripted connections in order */
+    static final class Script extends URLStreamHandler {
+        final ConcurrentLinkedQueue<long[]> steps = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Scripted> opened = new ConcurrentLinkedQueue<>();
+
+        Script then(long delayMillis, boolean fail) {
+            steps.add(new long[] {delayMillis, fail ? 1 : 0});
+            return this;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL u) {
+            long[] step = steps.poll();
+            Scripted c = step == null ? new Scripted(u, 1, false) : new Scripted(u, step[0], step[1] == 1);
+            opened.add(c);
+            return c;
+        }
+
+        Scripted nth(int n) {
+            return opened.stream().skip(n).findFirst().orElseThrow();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            hedgeWins(pool);
+            earlyFailure(pool);
+            notHedged(pool);
+            cancelledBeforeStart();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static void warmUp(HttpURLConnection.HedgePolicy policy, URL url) throws Exception {
+        for (int i = 0; i < 16; i++) {
+            policy.send(url, null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static int samples(HttpURLConnection.HedgePolicy policy, URL url) throws Exception {
+        Field latencies = HttpURLConnection.HedgePolicy.class.getDeclaredField("latencies");
+        latencies.setAccessible(true);
+        Object window = ((Map<String, Object>) latencies.get(policy)).get(url.getAuthority());
+        Field count = window.getClass().getDeclaredField("count");
+        count.setAccessible(true);
+        return count.getInt(window);
+    }
+
+    static void hedgeWins(ExecutorService pool) throws Exception {
+        Script script = new Script();
+        URL url = new URL(null, "http://hedge.test/", script);
+        HttpURLConnection.HedgePolicy policy = new HttpURLConnection.HedgePolicy(0.9, Duration.ofMillis(20), 1.0, pool);
+        warmUp(policy, url);
+        Check.equal(0L, policy.getHedgeCount(), "no hedges while responses are fast");
+        Check.equal(16, samples(policy, url), "primary wins are sampled");
+
+        script.then(400, false).then(1, false);
+        HttpURLConnection winner = policy.send(url, null);
+        Scripted primary = script.nth(16);
+        Scripted backup = script.nth(17);
+        Check.isTrue(winner == backup, "the hedge answers first");
+        Check.equal(1L, policy.getHedgeWinCount(), "hedge win counted");
+        Check.equal(16, samples(policy, url), "a hedge win is not sampled");
+        Check.equal(0, primary.disconnects.get(), "the loser is not disconnected while its response is awaited");
+        Thread.sleep(600);
+        Check.equal(1, primary.disconnects.get(), "the loser is disconnected once its wait has finished");
+        Check.equal(false, primary.disconnectedWhileWaiting, "never disconnected under the waiting thread");
+        Check.equal(0, backup.disconnects.get(), "the winner stays connected");
+    }
+
+    static void earlyFailure(ExecutorService pool) throws Exception {
+        Script script = new Script();
+        URL url = new URL(null, "http://early.test/", script);
+        HttpURLConnection.HedgePolicy policy = new HttpURLConnection.HedgePolicy(0.9, Duration.ofMillis(500), 1.0, pool);
+        warmUp(policy, url);
+        script.then(5, true).then(1, false);
+        long start = System.nanoTime();
+        HttpURLConnection winner = policy.send(url, null);
+        long took = (System.nanoTime() - start) / 1_000_000;
+        Check.isTrue(winner == script.nth(17), "the hedge replaces the failed primary");
+        Check.isTrue(took < 250, "hedge sent at once, not after the 500 ms delay: " + took + " ms");
+        Check.equal(1L, policy.getHedgeCount(), "one hedge");
+
+        script.then(5, true).then(5, true);
+        Check.fails(IOException.class, () -> policy.send(url, null), "both fail");
+    }
+
+    static void notHedged(ExecutorService pool) throws Exception {
+        Script script = new Script();
+        URL url = new URL(null, "http://cold.test/", script);
+        HttpURLConnection.HedgePolicy policy = new HttpURLConnection.HedgePolicy(0.9, Duration.ofMillis(5), 1.0, pool);
+        script.then(100, false);
+        policy.send(url, null);
+        Check.equal(0L, policy.getHedgeCount(), "no hedge before enough samples");
+        script.then(5, true);
+        Check.fails(IOException.class, () -> policy.send(url, null), "an unhedged failure is thrown");
+        HttpURLConnection head = policy.send(url, c -> {
+            try {
+                c.setRequestMethod("HEAD");
+            } catch (java.net.ProtocolException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Check.equal("HEAD", head.getRequestMethod(), "HEAD is sent once");
+        Check.equal(2L, policy.getRequestCount(), "only GET requests are counted");
+    }
+
+    static void cancelledBeforeStart() throws Exception {
+        // runs each wait on a new thread, except the hedge's, which is held until released
+        AtomicInteger tasks = new AtomicInteger();
+        ConcurrentLinkedQueue<Runnable> held = new ConcurrentLinkedQueue<>();
+        Executor holdHedge = r -> {
+            if (tasks.incrementAndGet() == 18) {
+                held.add(r);
+            } else {
+                new Thread(r).start();
+            }
+        };
+        Script script = new Script();
+        URL url = new URL(null, "http://held.test/", script);
+        HttpURLConnection.HedgePolicy policy = new HttpURLConnection.HedgePolicy(0.9, Duration.ofMillis(20), 1.0, holdHedge);
+        warmUp(policy, url);
+        script.then(150, false).then(1, false);
+        HttpURLConnection winner = policy.send(url, null);
+        Scripted backup = script.nth(17);
+        Check.isTrue(winner == script.nth(16), "the primary wins");
+        Check.equal(1L, policy.getHedgeCount(), "a hedge was sent");
+        Check.equal(0, backup.disconnects.get(), "not disconnected before its task has run");
+        held.poll().run();
+        Check.equal(0, backup.calls.get(), "the cancelled hedge never waits for a response");
+        Check.equal(1, backup.disconnects.get(), "the cancelled hedge is disconnected");
+        Check.equal(17, samples(policy, url), "a primary win is sampled");
+    }
+}
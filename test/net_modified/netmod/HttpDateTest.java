@@ -0,0 +1,88 @@
+package netmod;
+
+import java.time.Instant;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+public class HttpDateTest {
+    static final DateTimeFormatter IMF =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    static final DateTimeFormatter RFC850 =
+            DateTimeFormatter.ofPattern("EEEE, dd-MMM-yy HH:mm:ss 'GMT'", Locale.US);
+    static final DateTimeFormatter ASCTIME =
+            DateTimeFormatter.ofPattern("EEE MMM ppd HH:mm:ss yyyy", Locale.US);
+
+    /* year 1 and year 9999, the range formatHttpDate supports */
+    static final long MIN = -62135596800000L;
+    static final long MAX = 253402300799000L;
+
+    public static void main(String[] args) throws Exception {
+        examples();
+        randomDates();
+        invalid();
+        memoized();
+        format();
+    }
+
+    static long parse(String value) throws Exception {
+        return new TestConnection().header("Date", value).getHeaderFieldDate("Date", 42);
+    }
+
+    static void examples() throws Exception {
+        long expected = 784111777000L;
+        Check.equal(expected, parse("Sun, 06 Nov 1994 08:49:37 GMT"), "IMF-fixdate");
+        Check.equal(expected, parse("Sunday, 06-Nov-94 08:49:37 GMT"), "RFC 850");
+        Check.equal(expected, parse("Sun Nov  6 08:49:37 1994"), "asctime");
+        Check.equal(42L, new TestConnection().getHeaderFieldDate("Date", 42), "missing field");
+        Check.equal("Sun, 06 Nov 1994 08:49:37 GMT", HttpURLConnection.formatHttpDate(expected + 999), "format");
+    }
+
+    static void randomDates() throws Exception {
+        Random random = new Random(1);
+        int thisYear = Year.now(ZoneOffset.UTC).getValue();
+        for (int i = 0; i < 20_000; i++) {
+            long millis = MIN + Math.floorMod(random.nextLong(), MAX - MIN) / 1000 * 1000;
+            ZonedDateTime date = Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC);
+            String imf = IMF.format(date);
+            Check.equal(imf, HttpURLConnection.formatHttpDate(millis), "format " + millis);
+            Check.equal(millis, parse(imf), imf);
+            Check.equal(millis, parse(ASCTIME.format(date)), ASCTIME.format(date));
+            if (date.getYear() > thisYear - 50 && date.getYear() <= thisYear + 49) {
+                Check.equal(millis, parse(RFC850.format(date)), RFC850.format(date));
+            }
+        }
+    }
+
+    static void invalid() throws Exception {
+        for (String s : new String[] {"garbage", "", "Sun, 06 Xyz 1994 08:49:37 GMT"}) {
+            Check.equal(42L, parse(s), "invalid date " + s);
+        }
+        // other formats are left to URLConnection.getHeaderFieldDate
+        Check.equal(784111777000L, parse("Sun, 06 Nov 1994 08:49:37 UTC"), "fallback");
+    }
+
+    static void memoized() throws Exception {
+        // alternating values must not be answered from each other's memo slot
+        for (int i = 0; i < 100; i++) {
+            long millis = 784111777000L + i * 1000L;
+            String a = HttpURLConnection.formatHttpDate(millis);
+            String b = HttpURLConnection.formatHttpDate(millis + 86_400_000L);
+            Check.equal(millis, parse(a), a);
+            Check.equal(millis + 86_400_000L, parse(b), b);
+            Check.equal(millis, parse(a), "again " + a);
+        }
+    }
+
+    static void format() {
+        String a = HttpURLConnection.formatHttpDate(784111777000L);
+        Check.isTrue(a == HttpURLConnection.formatHttpDate(784111777999L), "same instance within a second");
+        Check.equal("Thu, 01 Jan 1970 00:00:00 GMT", HttpURLConnection.formatHttpDate(0), "epoch");
+        Check.equal("Wed, 31 Dec 1969 23:59:59 GMT", HttpURLConnection.formatHttpDate(-1), "before the epoch");
+        Check.fails(IllegalArgumentException.class, () -> HttpURLConnection.formatHttpDate(MIN - 1), "before year 1");
+        Check.fails(IllegalArgumentException.class, () -> HttpURLConnection.formatHttpDate(MAX + 1000), "after year 9999");
+    }
+}
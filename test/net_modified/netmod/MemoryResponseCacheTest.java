@@ -0,0 +1,112 @@
+package netmod;
+
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.URI;
+import java.util.Map;
+import java.util.Random;
+
+public class MemoryResponseCacheTest {
+    static final byte[] BODY = new byte[1000];
+
+    public static void main(String[] args) throws Exception {
+        hotSetSurvivesScan();
+        staleness();
+        refusals();
+        entries();
+    }
+
+    static TestConnection fresh() throws Exception {
+        return new TestConnection().header("Cache-Control", "max-age=3600");
+    }
+
+    static boolean fetch(HttpURLConnection.MemoryResponseCache cache, String url,
+                         TestConnection conn) throws Exception {
+        URI uri = URI.create(url);
+        CacheResponse r = cache.get(uri, "GET", Map.of());
+        if (r != null) {
+            r.getBody().readAllBytes();
+            return true;
+        }
+        CacheRequest q = cache.put(uri, conn);
+        if (q != null) {
+            try (OutputStream o = q.getBody()) {
+                o.write(BODY);
+            }
+        }
+        return false;
+    }
+
+    static void hotSetSurvivesScan() throws Exception {
+        HttpURLConnection.MemoryResponseCache cache = new HttpURLConnection.MemoryResponseCache(100_000);
+        Random rnd = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            fetch(cache, "http://h/hot" + rnd.nextInt(50), fresh());
+        }
+        for (int i = 0; i < 20000; i++) {
+            fetch(cache, "http://h/scan" + i, fresh());
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get(URI.create("http://h/hot" + i), "GET", Map.of()) != null) {
+                hot++;
+            }
+        }
+        // an LRU cache of the same size would keep none of them after the scan
+        Check.isTrue(hot >= 45, "hot entries surviving a scan: " + hot + "/50");
+        Check.isTrue(cache.weightedSize() <= 100_000, "size bound: " + cache.weightedSize());
+        Check.isTrue(cache.hitCount() > 4500, "hits while the hot set warms up: " + cache.hitCount());
+    }
+
+    static void staleness() throws Exception {
+        HttpURLConnection.MemoryResponseCache cache = new HttpURLConnection.MemoryResponseCache(100_000);
+        fetch(cache, "http://h/short", new TestConnection().header("Cache-Control", "max-age=1"));
+        fetch(cache, "http://h/long", fresh());
+        fetch(cache, "http://h/aged", new TestConnection().header("Cache-Control", "max-age=3600").header("Age", "3599"));
+        Check.isTrue(cache.get(URI.create("http://h/short"), "GET", Map.of()) != null, "fresh entry is served");
+        Check.isTrue(cache.get(URI.create("http://h/aged"), "GET", Map.of()) != null, "entry with age below its lifetime");
+        long size = cache.weightedSize();
+        Thread.sleep(1100);
+        long misses = cache.missCount();
+        Check.equal(null, cache.get(URI.create("http://h/short"), "GET", Map.of()), "stale entry is not served");
+        Check.equal(null, cache.get(URI.create("http://h/aged"), "GET", Map.of()), "age counts towards staleness");
+        Check.equal(misses + 2, cache.missCount(), "stale lookups are misses");
+        Check.isTrue(cache.get(URI.create("http://h/long"), "GET", Map.of()) != null, "fresh entry is still served");
+        Check.isTrue(cache.weightedSize() <= size - 2 * BODY.length, "stale entries are removed");
+    }
+
+    static void refusals() throws Exception {
+        HttpURLConnection.MemoryResponseCache cache = new HttpURLConnection.MemoryResponseCache(100_000);
+        URI uri = URI.create("http://h/r");
+        for (String cc : new String[] {"no-store", "no-cache", "private", "PRIVATE=\"Set-Cookie\"",
+                                       "max-age=60, must-revalidate", "max-age=0"}) {
+            Check.equal(null, cache.put(uri, new TestConnection().header("Cache-Control", cc)), "Cache-Control: " + cc);
+        }
+        Check.equal(null, cache.put(uri, new TestConnection()), "no freshness lifetime");
+        Check.equal(null, cache.put(uri, fresh().header("Age", "3600")), "arrived stale");
+        Check.equal(null, cache.put(uri, fresh().code(404)), "not 200");
+        Check.equal(null, cache.put(uri, fresh().method("POST")), "not GET");
+        Check.equal(null, cache.put(uri, fresh().header("Vary", "Accept")), "Vary");
+        Check.equal(null, cache.put(uri, fresh().header("Content-Length", "30000")), "larger than a quarter of the cache");
+        TestConnection auth = fresh();
+        auth.addRequestProperty("authorization", "Basic dXNlcjpwYXNz");
+        auth.connect();
+        Check.equal(null, cache.put(uri, auth), "request with Authorization");
+        Check.isTrue(cache.put(uri, fresh().header("Cache-Control", "public, max-age=60")) != null, "public response is stored");
+    }
+
+    static void entries() throws Exception {
+        HttpURLConnection.MemoryResponseCache cache = new HttpURLConnection.MemoryResponseCache(100_000);
+        fetch(cache, "http://h/e", fresh());
+        CacheResponse r = cache.get(URI.create("http://h/e"), "GET", Map.of());
+        Check.equal(BODY.length, r.getBody().readAllBytes().length, "stored body");
+        Check.equal("[HTTP/1.1 200]", String.valueOf(r.getHeaders().get(null)), "stored status line");
+        Check.equal(null, cache.get(URI.create("http://h/e"), "POST", Map.of()), "POST lookup");
+        CacheRequest big = cache.put(URI.create("http://h/big"), fresh());
+        try (OutputStream o = big.getBody()) {
+            o.write(new byte[30000]);
+        }
+        Check.equal(null, cache.get(URI.create("http://h/big"), "GET", Map.of()), "oversized body is dropped");
+    }
+}
@@ -0,0 +1,13 @@
+package netmod;
+
+public class PipeliningTest {
+    public static void main(String[] args) throws Exception {
+        TestConnection conn = new TestConnection();
+        Check.equal(false, conn.getPipelining(), "pipelining is off by default");
+        conn.setPipelining(true);
+        Check.equal(true, conn.getPipelining(), "pipelining after opting in");
+        conn.connect();
+        Check.fails(IllegalStateException.class, () -> conn.setPipelining(false), "setPipelining after connect");
+        Check.equal(true, conn.getPipelining(), "a rejected call leaves the flag unchanged");
+    }
+}
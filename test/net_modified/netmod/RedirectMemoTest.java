@@ -0,0 +1,95 @@
+package netmod;
+
+import java.net.ProtocolException;
+
+public class RedirectMemoTest {
+    public static void main(String[] args) throws Exception {
+        permanent();
+        temporary();
+        methods();
+        expiry();
+        loops();
+        eviction();
+    }
+
+    static void remember(String from, int code, String to) throws Exception {
+        new TestConnection(from).code(code).rememberRedirect(to);
+    }
+
+    static String resolve(String url) throws Exception {
+        return HttpURLConnection.resolveRedirects(url, "GET");
+    }
+
+    static void permanent() throws Exception {
+        remember("http://a/", HttpURLConnection.HTTP_MOVED_PERM, "http://b/");
+        remember("http://b/", HttpURLConnection.HTTP_PERM_REDIRECT, "http://c/");
+        Check.equal("http://c/", resolve("http://a/"), "chain of permanent redirects");
+        Check.equal("http://c/", HttpURLConnection.resolveRedirects("http://a/", "HEAD"), "HEAD follows too");
+        Check.equal("http://z/", resolve("http://z/"), "unknown URL");
+
+        new TestConnection("http://n/").code(HttpURLConnection.HTTP_MOVED_PERM)
+                .header("Cache-Control", "no-store").rememberRedirect("http://o/");
+        Check.equal("http://n/", resolve("http://n/"), "no-store redirect is not remembered");
+        Check.fails(NullPointerException.class, () -> resolve(null), "null URL");
+    }
+
+    static void temporary() throws Exception {
+        remember("http://t/", HttpURLConnection.HTTP_MOVED_TEMP, "http://u/");
+        remember("http://t/", HttpURLConnection.HTTP_SEE_OTHER, "http://u/");
+        Check.equal("http://t/", resolve("http://t/"), "temporary redirect without a lifetime");
+
+        new TestConnection("http://t2/").code(HttpURLConnection.HTTP_TEMP_REDIRECT)
+                .header("Cache-Control", "max-age=100").rememberRedirect("http://u2/");
+        Check.equal("http://u2/", resolve("http://t2/"), "temporary redirect while fresh");
+
+        // a later response that may not be remembered replaces the memo entry
+        remember("http://t2/", HttpURLConnection.HTTP_MOVED_TEMP, "http://u3/");
+        Check.equal("http://t2/", resolve("http://t2/"), "entry dropped by a later redirect");
+
+        remember("http://ok/", HttpURLConnection.HTTP_OK, "http://elsewhere/");
+        Check.equal("http://ok/", resolve("http://ok/"), "not a redirect");
+    }
+
+    static void methods() throws Exception {
+        new TestConnection("http://p/").code(HttpURLConnection.HTTP_SEE_OTHER).method("POST")
+                .header("Cache-Control", "max-age=100").rememberRedirect("http://q/");
+        Check.equal("http://p/", resolve("http://p/"), "redirect of a POST is not remembered");
+        Check.equal("http://a/", HttpURLConnection.resolveRedirects("http://a/", "POST"), "POST is never resolved");
+    }
+
+    static void expiry() throws Exception {
+        new TestConnection("http://e/").code(HttpURLConnection.HTTP_MOVED_PERM)
+                .header("Cache-Control", "max-age=1").rememberRedirect("http://f/");
+        Check.equal("http://f/", resolve("http://e/"), "fresh permanent redirect");
+        Thread.sleep(1100);
+        Check.equal("http://e/", resolve("http://e/"), "expired permanent redirect");
+    }
+
+    static void loops() throws Exception {
+        remember("http://l1/", HttpURLConnection.HTTP_MOVED_PERM, "http://l2/");
+        remember("http://l2/", HttpURLConnection.HTTP_MOVED_PERM, "http://l1/");
+        Check.fails(ProtocolException.class, () -> resolve("http://l1/"), "redirect loop");
+
+        for (int i = 0; i < 25; i++) {
+            remember("http://h" + i + "/", HttpURLConnection.HTTP_MOVED_PERM, "http://h" + (i + 1) + "/");
+        }
+        Check.fails(ProtocolException.class, () -> resolve("http://h0/"), "chain longer than 20");
+        Check.equal("http://h25/", resolve("http://h10/"), "chain of 15");
+    }
+
+    static void eviction() throws Exception {
+        remember("http://hot/", HttpURLConnection.HTTP_MOVED_PERM, "http://hot2/");
+        for (int i = 0; i < 5000; i++) {
+            remember("http://s" + i + "/", HttpURLConnection.HTTP_MOVED_PERM, "http://x/");
+            resolve("http://hot/");
+        }
+        Check.equal("http://hot2/", resolve("http://hot/"), "a redirect in constant use survives eviction");
+        int kept = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (resolve("http://s" + i + "/").equals("http://x/")) {
+                kept++;
+            }
+        }
+        Check.isTrue(kept > 0 && kept <= 1024, "memo stays bounded, kept " + kept);
+    }
+}
@@ -0,0 +1,54 @@
+package netmod;
+
+import java.net.ProtocolException;
+
+public class RequestMethodTest {
+    public static void main(String[] args) throws Exception {
+        names();
+        invalid();
+        constants();
+        connected();
+    }
+
+    static void names() throws Exception {
+        for (HttpURLConnection.RequestMethod m : HttpURLConnection.RequestMethod.values()) {
+            TestConnection conn = new TestConnection();
+            conn.setRequestMethod(new String(m.name()));
+            Check.isTrue(conn.getRequestMethod() == m.name(), "canonical instance for " + m);
+        }
+        Check.equal("GET", new TestConnection().getRequestMethod(), "default method");
+    }
+
+    static void invalid() throws Exception {
+        for (String s : new String[] {"get", "Get", "PATCH", "GOT", "PUSH", "HEAP", "XXXXX",
+                                      "DELETES", "OPTION", "", "G"}) {
+            TestConnection conn = new TestConnection();
+            Check.fails(ProtocolException.class, () -> conn.setRequestMethod(s), "invalid method " + s);
+            Check.equal("GET", conn.getRequestMethod(), "rejected method leaves GET");
+        }
+        Check.fails(IllegalArgumentException.class, () -> new TestConnection().setRequestMethod((String) null), "null name");
+        Check.fails(NullPointerException.class,
+                () -> new TestConnection().setRequestMethod((HttpURLConnection.RequestMethod) null), "null constant");
+    }
+
+    static void constants() throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.setRequestMethod(HttpURLConnection.RequestMethod.OPTIONS);
+        Check.isTrue(conn.getRequestMethod() == HttpURLConnection.RequestMethod.OPTIONS.name(), "constant name");
+
+        Check.isTrue(HttpURLConnection.RequestMethod.HEAD.isSafe(), "HEAD is safe");
+        Check.isTrue(!HttpURLConnection.RequestMethod.PUT.isSafe(), "PUT is not safe");
+        Check.isTrue(HttpURLConnection.RequestMethod.PUT.isIdempotent(), "PUT is idempotent");
+        Check.isTrue(HttpURLConnection.RequestMethod.DELETE.isIdempotent(), "DELETE is idempotent");
+        Check.isTrue(!HttpURLConnection.RequestMethod.POST.isIdempotent(), "POST is not idempotent");
+    }
+
+    static void connected() throws Exception {
+        TestConnection conn = new TestConnection();
+        conn.connect();
+        Check.fails(ProtocolException.class, () -> conn.setRequestMethod("POST"), "name after connect");
+        Check.fails(ProtocolException.class,
+                () -> conn.setRequestMethod(HttpURLConnection.RequestMethod.POST), "constant after connect");
+        Check.equal("GET", conn.getRequestMethod(), "method unchanged after connect");
+    }
+}
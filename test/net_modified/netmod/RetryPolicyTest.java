@@ -0,0 +1,109 @@
+package netmod;
+
+import java.time.Duration;
+
+public class RetryPolicyTest {
+    public static void main(String[] args) throws Exception {
+        retryAfter();
+        retryable();
+        jitter();
+        budget();
+        arguments();
+    }
+
+    static TestConnection response(int code) throws Exception {
+        return new TestConnection().code(code);
+    }
+
+    static long retryAfter(String value) throws Exception {
+        return response(503).header("Retry-After", value).getRetryAfter();
+    }
+
+    static HttpURLConnection.RetryPolicy policy(int capacity) {
+        return new HttpURLConnection.RetryPolicy(4, Duration.ofMillis(100), Duration.ofSeconds(10), 0.1, capacity);
+    }
+
+    static void retryAfter() throws Exception {
+        Check.equal(-1L, response(503).getRetryAfter(), "missing");
+        Check.equal(120_000L, retryAfter("120"), "seconds");
+        Check.equal(5000L, retryAfter(" 5 "), "surrounding spaces");
+        Check.equal(-1L, retryAfter("abc"), "invalid");
+        Check.equal(-1L, retryAfter("-5"), "negative");
+        Check.equal(0L, retryAfter("Sun, 06 Nov 1994 08:49:37 GMT"), "date in the past");
+        String inAMinute = HttpURLConnection.formatHttpDate(System.currentTimeMillis() + 61_000);
+        long delay = retryAfter(inAMinute);
+        Check.isTrue(delay > 55_000 && delay <= 61_000, "date in the future gave " + delay);
+    }
+
+    static void retryable() throws Exception {
+        HttpURLConnection.RetryPolicy p = policy(100);
+        Check.isTrue(p.retryDelay(response(503), 0, 0) >= 100, "503 is retried");
+        Check.isTrue(p.retryDelay(response(504), 0, 0) >= 100, "504 is retried");
+        Check.equal(-1L, p.retryDelay(response(200), 0, 0), "200 is not retried");
+        Check.equal(-1L, p.retryDelay(response(500), 0, 0), "500 is not retried");
+        Check.equal(-1L, p.retryDelay(response(503).method("POST"), 0, 0), "POST is not retried");
+        Check.equal(2000L, p.retryDelay(response(429).method("PUT").header("Retry-After", "2"), 0, 0), "Retry-After is used");
+        Check.equal(-1L, p.retryDelay(response(429).header("Retry-After", "60"), 0, 0), "Retry-After over the maximum delay");
+        Check.equal(-1L, p.retryDelay(response(503), 4, 0), "maxRetries reached");
+        Check.isTrue(p.retryDelay(response(503), 3, 0) >= 0, "last retry allowed");
+    }
+
+    static void jitter() throws Exception {
+        HttpURLConnection.RetryPolicy p = policy(1000);
+        boolean varied = false;
+        long first = -1;
+        for (int i = 0; i < 200; i++) {
+            long previous = 0;
+            for (int retries = 0; retries < 4; retries++) {
+                long d = p.retryDelay(response(503), retries, previous);
+                Check.isTrue(d >= 100 && d <= Math.min(10_000, Math.max(100, previous) * 3),
+                        "delay " + d + " after " + previous);
+                previous = d;
+            }
+            if (first < 0) {
+                first = previous;
+            } else if (previous != first) {
+                varied = true;
+            }
+        }
+        Check.isTrue(varied, "delays are randomized");
+        Check.isTrue(p.retryDelay(response(503), 0, 1_000_000) <= 10_000, "capped at the maximum delay");
+    }
+
+    static void budget() throws Exception {
+        HttpURLConnection.RetryPolicy p = policy(2);
+        Check.isTrue(p.retryDelay(response(504), 0, 0) >= 0, "first token");
+        Check.isTrue(p.retryDelay(response(504), 0, 0) >= 0, "second token");
+        Check.equal(-1L, p.retryDelay(response(504), 0, 0), "budget exhausted");
+        Check.isTrue(p.retryDelay(new TestConnection("http://other.example/").code(504), 0, 0) >= 0, "budgets are per host");
+
+        for (int i = 0; i < 9; i++) {
+            p.recordRequest("example.com");
+        }
+        Check.equal(-1L, p.retryDelay(response(504), 0, 0), "9 requests earn less than a token");
+        p.recordRequest("example.com");
+        Check.isTrue(p.retryDelay(response(504), 0, 0) >= 0, "10 requests earn a token");
+
+        for (int i = 0; i < 1000; i++) {
+            p.recordRequest("example.com");
+        }
+        int retries = 0;
+        while (p.retryDelay(response(504), 0, 0) >= 0) {
+            retries++;
+        }
+        Check.equal(2, retries, "budget is capped at its capacity");
+    }
+
+    static void arguments() {
+        Check.fails(IllegalArgumentException.class,
+                () -> new HttpURLConnection.RetryPolicy(-1, Duration.ZERO, Duration.ZERO, 0.1, 1), "negative retries");
+        Check.fails(IllegalArgumentException.class,
+                () -> new HttpURLConnection.RetryPolicy(1, Duration.ofSeconds(2), Duration.ofSeconds(1), 0.1, 1), "max below base");
+        Check.fails(IllegalArgumentException.class,
+                () -> new HttpURLConnection.RetryPolicy(1, Duration.ZERO, Duration.ZERO, 1.5, 1), "ratio above 1");
+        Check.fails(IllegalArgumentException.class,
+                () -> new HttpURLConnection.RetryPolicy(1, Duration.ZERO, Duration.ZERO, Double.NaN, 1), "NaN ratio");
+        Check.fails(NullPointerException.class,
+                () -> new HttpURLConnection.RetryPolicy(1, null, Duration.ZERO, 0.1, 1), "null delay");
+    }
+}
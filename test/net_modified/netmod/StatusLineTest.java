@@ -0,0 +1,68 @@
+package netmod;
+
+import java.nio.charset.StandardCharsets;
+
+public class StatusLineTest {
+    public static void main(String[] args) {
+        valid();
+        invalid();
+        reasonPhrases();
+        statusClass();
+    }
+
+    static byte[] line(String s) {
+        return ("xx" + s + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static int code(String s) {
+        return HttpURLConnection.parseStatusCode(line(s), 2, s.length());
+    }
+
+    static String reason(String s) {
+        return HttpURLConnection.parseReasonPhrase(line(s), 2, s.length());
+    }
+
+    static void valid() {
+        Check.equal(200, code("HTTP/1.1 200 OK"), "200");
+        Check.equal(404, code("HTTP/1.0 404 Not Found"), "HTTP/1.0");
+        Check.equal(503, code("HTTP/2 503 Service Unavailable"), "single-digit version");
+        Check.equal(204, code("HTTP/1.1 204"), "no reason phrase");
+        Check.equal(null, reason("HTTP/1.1 204"), "no reason phrase");
+        Check.equal(599, code("HTTP/1.1 599 Custom"), "unknown code");
+        Check.equal("Custom", reason("HTTP/1.1 599 Custom"), "unknown code reason");
+    }
+
+    static void invalid() {
+        for (String s : new String[] {"FTP/1.1 200 OK", "HTTP/1.1 20 OK", "HTTP/1.1 2000 X",
+                                      "HTTP/1.1 2x0 OK", "http/1.1 200 OK", "HTTP/1.1", ""}) {
+            Check.equal(-1, code(s), "invalid status line " + s);
+            Check.equal(null, reason(s), "no reason for invalid line " + s);
+        }
+        byte[] buf = line("HTTP/1.1 200 OK");
+        Check.fails(IndexOutOfBoundsException.class, () -> HttpURLConnection.parseStatusCode(buf, 2, buf.length), "past end");
+        Check.fails(IndexOutOfBoundsException.class, () -> HttpURLConnection.parseReasonPhrase(buf, -1, 4), "negative offset");
+    }
+
+    static void reasonPhrases() {
+        String ok = reason("HTTP/1.1 200 OK");
+        Check.equal("OK", ok, "standard phrase");
+        Check.isTrue(ok == reason("HTTP/1.0 200 OK"), "standard phrase is shared");
+        Check.isTrue(reason("HTTP/1.1 304 Not Modified") == reason("HTTP/1.1 304 Not Modified"), "304 phrase is shared");
+        String okay = reason("HTTP/1.1 200 Okay");
+        Check.equal("Okay", okay, "non-standard phrase");
+        Check.isTrue(okay != reason("HTTP/1.1 200 Okay"), "non-standard phrase is decoded each time");
+        Check.equal("Not Found", reason("HTTP/1.1 404 Not Found"), "404");
+        Check.equal("not found", reason("HTTP/1.1 404 not found"), "case is kept");
+    }
+
+    static void statusClass() {
+        Check.equal(1, HttpURLConnection.statusClass(100), "100");
+        Check.equal(2, HttpURLConnection.statusClass(204), "204");
+        Check.equal(3, HttpURLConnection.statusClass(399), "399");
+        Check.equal(4, HttpURLConnection.statusClass(HttpURLConnection.HTTP_NOT_FOUND), "404");
+        Check.equal(5, HttpURLConnection.statusClass(599), "599");
+        Check.equal(-1, HttpURLConnection.statusClass(99), "below range");
+        Check.equal(-1, HttpURLConnection.statusClass(600), "above range");
+        Check.equal(-1, HttpURLConnection.statusClass(-1), "no status code");
+    }
+}
@@ -0,0 +1,89 @@
+package netmod;
+
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An {@code HttpURLConnection} whose response is set up by the test instead of read from 
+ * the network.
+ */
+class TestConnection extends HttpURLConnection {
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private int code = HTTP_OK;
+    private InputStream body;
+    int disconnects;
+
+    TestConnection() throws MalformedURLException {
+        this("http://example.com/");
+    }
+
+    TestConnection(String url) throws MalformedURLException {
+        super(new URL(url));
+    }
+
+    TestConnection header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    TestConnection code(int code) {
+        this.code = code;
+        return this;
+    }
+
+    TestConnection method(String method) {
+        this.method = method;
+        return this;
+    }
+
+    TestConnection body(InputStream body) {
+        this.body = body;
+        return this;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        fields.put(null, List.of("HTTP/1.1 " + code));
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            fields.put(e.getKey(), new ArrayList<>(List.of(e.getValue())));
+        }
+        return fields;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return code;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return body;
+    }
+
+    @Override
+    public void disconnect() {
+        disconnects++;
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+    @Override
+    public void connect() {
+        connected = true;
+    }
+}
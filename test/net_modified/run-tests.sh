@@ -0,0 +1,32 @@
+#!/bin/sh
+# Compiles and runs the HttpURLConnection tests.
+#
+# The JVM refuses to load classes in packages whose names start with "java.", so
+# java/net_modified/HttpURLConnection.java is compiled under the package name "netmod",
+# the package of the tests. Each netmod/*Test.java class is run with its main method
+# and fails by throwing.
+set -e
+here=$(cd "$(dirname "$0")" && pwd)
+root=$(cd "$here/../.." && pwd)
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+mkdir -p "$work/src/netmod" "$work/classes"
+sed 's/^package java\.net_modified;/package netmod;/' \
+    "$root/java/net_modified/HttpURLConnection.java" > "$work/src/netmod/HttpURLConnection.java"
+javac -nowarn -d "$work/classes" "$work/src/netmod/HttpURLConnection.java" "$here"/netmod/*.java
+
+failed=0
+for test in "$here"/netmod/*Test.java; do
+    name=$(basename "$test" .java)
+    if [ -n "$1" ] && [ "$1" != "$name" ]; then
+        continue
+    fi
+    if java -cp "$work/classes" "netmod.$name"; then
+        echo "PASS $name"
+    else
+        echo "FAIL $name"
+        failed=1
+    fi
+done
+exit $failed